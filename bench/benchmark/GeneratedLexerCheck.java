@@ -0,0 +1,118 @@
+package benchmark;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexerGenerator;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// Differential check of lexer.LexerGenerator: generates lexers (switch and table style for
+// MyLang, and the default style for the larger benchmark specs), compiles them with the system
+// Java compiler, and checks every token, line and error against LexicalAnalyzer on the
+// SyntheticCorpus mixes, random char soup and short edge cases. Also prints the throughput of
+// each generated lexer next to the interpreter. Exits with an exception on the first difference.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.GeneratedLexerCheck
+public class GeneratedLexerCheck {
+    private static final String[] EDGE_CASES = { "", " ", "\n\n", "x", "-", "-1", "1.", "1.5e", "1.5e+3", "/", "/*", "/*.*/",
+            "//..\n", "\"", "\"^\"", "'^'", "'\\.'", "System.out", "System.out.println(x);", "if1", "ifx", "int x = -2;",
+            "\u00e9\u4e00\ud83d\ude00", "\0\t\r" };
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("generated-lexers");
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) throw new IllegalStateException("No system Java compiler (run on a JDK)");
+
+        CompiledDFA myLang = CompilerFrontEnd.myLangSpec().compile();
+        check("MyLang, switch", myLang, LexerGenerator.generate(myLang, "", "SwitchLexer", false), "SwitchLexer", dir, javac);
+        check("MyLang, table", myLang, LexerGenerator.generate(myLang, "", "TableLexer", true), "TableLexer", dir, javac);
+        TokenSpec[] specs = { SubsetConstructionBenchmark.largeSpec(), SubsetConstructionBenchmark.unicodeSpec() };
+        String[] names = { "large", "unicode" };
+        for (int i = 0; i < specs.length; i++) {
+            CompiledDFA dfa = specs[i].compile();
+            String className = "Lexer_" + names[i];
+            check(names[i] + " spec, default", dfa, LexerGenerator.generate(dfa, "", className), className, dir, javac);
+        }
+    }
+
+    private static void check(String name, CompiledDFA dfa, String source, String className, Path dir, JavaCompiler javac) throws Exception {
+        Path file = dir.resolve(className + ".java");
+        Files.writeString(file, source);
+        if (javac.run(null, null, null, "-d", dir.toString(), file.toString()) != 0)
+            throw new IllegalStateException(name + ": generated source does not compile (" + file + ")");
+        Class<?> lexer;
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, null)) {
+            lexer = loader.loadClass(className);
+        }
+        String style = source.substring(source.indexOf('(') + 1, source.indexOf(" style"));
+
+        List<String> inputs = new ArrayList<>(Arrays.asList(EDGE_CASES));
+        for (String mix : SyntheticCorpus.MIXES)
+            inputs.add(SyntheticCorpus.generate(mix, 1 << 20, 3));
+        Random random = new Random(11);
+        String soup = "ab zA09.-*/\"'\\^\n\t\r=;(e+_\u00e9\u4e00";
+        for (int n = 0; n < 20; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(2000); i > 0; i--) sb.append(soup.charAt(random.nextInt(soup.length())));
+            inputs.add(sb.toString());
+        }
+        long tokens = 0;
+        for (String input : inputs)
+            tokens += compare(name, dfa, lexer, input);
+
+        String corpus = SyntheticCorpus.generate("mixed", 4 << 20, 1);
+        double interpreted = SubsetConstructionBenchmark.time(
+                () -> new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable()).tokenizeToBuffer(corpus), 5);
+        double generated = SubsetConstructionBenchmark.time(() -> {
+            try {
+                run(lexer, corpus, null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }, 5);
+        System.out.printf("%-22s %-6s %4d states: %d inputs, %d tokens identical; mixed corpus %.1f MB/s generated vs %.1f MB/s interpreted%n",
+                name, style, dfa.stateCount, inputs.size(), tokens, corpus.length() / generated / 1e3, corpus.length() / interpreted / 1e3);
+    }
+
+    // Compares the generated lexer with LexicalAnalyzer on source; returns the token count.
+    private static int compare(String name, CompiledDFA dfa, Class<?> lexer, String source) throws ReflectiveOperationException {
+        ErrorHandler errors = new ErrorHandler();
+        TokenBuffer expected = new LexicalAnalyzer(dfa, errors, new SymbolTable()).tokenizeToBuffer(source);
+        TokenBuffer actual = new TokenBuffer(source, expected.typeNames());
+        List<String> actualErrors = run(lexer, source, actual);
+        if (expected.size() != actual.size())
+            throw new IllegalStateException(name + ": token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.kind(i) != actual.kind(i) || expected.start(i) != actual.start(i)
+                    || expected.length(i) != actual.length(i) || expected.line(i) != actual.line(i))
+                throw new IllegalStateException(name + ": token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+        if (!errors.errors().equals(actualErrors))
+            throw new IllegalStateException(name + ": errors differ");
+        return expected.size();
+    }
+
+    // Lexes source with the generated class through its fill method, adding the tokens to sink if
+    // it is not null; returns the generated lexer's errors.
+    @SuppressWarnings("unchecked")
+    private static List<String> run(Class<?> lexer, String source, TokenBuffer sink) throws ReflectiveOperationException {
+        Object instance = lexer.getConstructor(String.class).newInstance(source);
+        Method fill = lexer.getMethod("fill", int[].class, int[].class, int[].class, int[].class);
+        int[] kinds = new int[4096], starts = new int[4096], lengths = new int[4096], lines = new int[4096];
+        for (int count; (count = (int) fill.invoke(instance, kinds, starts, lengths, lines)) > 0; )
+            if (sink != null)
+                for (int i = 0; i < count; i++)
+                    sink.add(kinds[i], starts[i], lengths[i], lines[i]);
+        return (List<String>) lexer.getMethod("errors").invoke(instance);
+    }
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.Random;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.IncrementalLexer;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import token.TokenBuffer;
+
+// Per-edit latency of IncrementalLexer against re-lexing the whole text, for documents of
+// growing size and for one with hundreds of thousands of distinct identifiers (the
+// SyntheticCorpus identifiers mix). Edits are single-char inserts (newlines among them) and
+// deletes around a cursor that jumps to a random place every 50 edits, as typing produces;
+// the symbol table is brought up to date after every edit (reportSymbols, timed separately).
+// After the run the session's tokens, errors and symbol table are checked against a full re-lex.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.IncrementalLexBenchmark [edits]
+public class IncrementalLexBenchmark {
+    private static final String TYPED = "a1 ;(\n\"/*.e";
+
+    public static void main(String[] args) {
+        int edits = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        CompiledDFA dfa = CompilerFrontEnd.myLangSpec().compile();
+        for (int kilobytes : new int[] { 16, 256, 4096 })
+            run(dfa, kilobytes + " KB", ParallelLexBenchmark.syntheticSource(kilobytes << 10), edits);
+        run(dfa, "4096 KB identifiers", SyntheticCorpus.generate("identifiers", 4 << 20, 11), edits);
+    }
+
+    private static void run(CompiledDFA dfa, String label, String source, int edits) {
+        ErrorHandler errors = new ErrorHandler();
+        SymbolTable symbols = new SymbolTable();
+        IncrementalLexer session = new LexicalAnalyzer(dfa, errors, symbols).incremental(source);
+        Random random = new Random(42);
+        long relexed = 0, editNanos = 0, reportNanos = 0;
+        int length = source.length(), cursor = 0;
+        for (int i = 0; i < edits; i++) {
+            long start = System.nanoTime();
+            if (i % 50 == 0) cursor = random.nextInt(length);
+            int offset = Math.min(cursor, length - 1);
+            boolean insert = random.nextInt(3) > 0;
+            IncrementalLexer.Change change = insert
+                    ? session.edit(offset, 0, String.valueOf(TYPED.charAt(random.nextInt(TYPED.length()))))
+                    : session.edit(offset, 1, "");
+            length += insert ? 1 : -1;
+            cursor = insert ? offset + 1 : offset;
+            relexed += change.insertedTokens;
+            long edited = System.nanoTime();
+            session.reportSymbols();
+            editNanos += edited - start;
+            reportNanos += System.nanoTime() - edited;
+        }
+        session.reportErrors();
+
+        String text = session.text();
+        ErrorHandler fullErrors = new ErrorHandler();
+        SymbolTable fullSymbols = new SymbolTable();
+        TokenBuffer expected = new LexicalAnalyzer(dfa, fullErrors, fullSymbols).tokenizeToBuffer(text);
+        check(expected, session.tokens());
+        if (!fullErrors.errors().equals(errors.errors()))
+            throw new IllegalStateException(label + ": errors differ");
+        checkSymbols(label, dfa, expected, fullSymbols, symbols);
+
+        double fullUs = SubsetConstructionBenchmark.time(() -> lexer(dfa).tokenizeToBuffer(text), 10) * 1e3;
+        System.out.printf("%-20s incremental %9.1f us/edit (%.1f tokens re-lexed), reportSymbols %6.1f us/edit, full re-lex %10.1f us%n",
+                label + ":", editNanos / 1e3 / edits, (double) relexed / edits, reportNanos / 1e3 / edits, fullUs);
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+
+    private static void check(TokenBuffer expected, TokenBuffer actual) {
+        if (expected.size() != actual.size())
+            throw new IllegalStateException("Token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.kind(i) != actual.kind(i) || expected.start(i) != actual.start(i)
+                    || expected.length(i) != actual.length(i) || expected.line(i) != actual.line(i))
+                throw new IllegalStateException("Token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+    }
+
+    // Same number of symbols, and every identifier of the text bound to the same token.
+    private static void checkSymbols(String label, CompiledDFA dfa, TokenBuffer tokens, SymbolTable expected, SymbolTable actual) {
+        if (expected.size() != actual.size())
+            throw new IllegalStateException(label + ": " + actual.size() + " symbols vs " + expected.size());
+        int identifier = dfa.kindOf("IDENTIFIER");
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) != identifier) continue;
+            String name = tokens.lexeme(i).toString();
+            if (!String.valueOf(expected.lookup(name)).equals(String.valueOf(actual.lookup(name))))
+                throw new IllegalStateException(label + ": symbol " + name + " is " + actual.lookup(name) + " vs " + expected.lookup(name));
+        }
+    }
+}
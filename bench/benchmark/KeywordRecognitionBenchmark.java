@@ -0,0 +1,84 @@
+package benchmark;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// Keywords recognized in the DFA (the KEYWORD regex compiled in, so the accept state decides)
+// against keywords left out of it (TokenSpec.compileWithout("KEYWORD"), so identifiers are looked
+// up in LexicalAnalyzer's perfect-hash keyword table). Both must give the same tokens, lines,
+// errors and symbol tables on every SyntheticCorpus mix; then compares build time, DFA size and
+// throughput.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.KeywordRecognitionBenchmark
+public class KeywordRecognitionBenchmark {
+    public static void main(String[] args) {
+        TokenSpec spec = CompilerFrontEnd.myLangSpec();
+        for (int i = 0; i < 3; i++) { spec.compile(); spec.compileWithout("KEYWORD"); } // warm-up
+        long start = System.nanoTime();
+        CompiledDFA inDfa = spec.compile();
+        double inDfaMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        CompiledDFA hashed = spec.compileWithout("KEYWORD");
+        double hashedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Keywords in the DFA:     %3d states x %2d classes, %6d table entries, built in %5.1f ms%n",
+                inDfa.stateCount, inDfa.classCount, inDfa.table.length, inDfaMs);
+        System.out.printf("Keywords in a hash table: %3d states x %2d classes, %6d table entries, built in %5.1f ms%n",
+                hashed.stateCount, hashed.classCount, hashed.table.length, hashedMs);
+
+        for (String mix : SyntheticCorpus.MIXES) {
+            String source = SyntheticCorpus.generate(mix, 1 << 20, 4);
+            String[] expected = lex(inDfa, source), actual = lex(hashed, source);
+            for (int k = 0; k < expected.length; k++)
+                if (!expected[k].equals(actual[k]))
+                    throw new IllegalStateException(mix + ": " + new String[] { "tokens", "errors", "symbols" }[k] + " differ");
+        }
+        System.out.println("Tokens, errors and symbol tables identical on every mix");
+
+        System.out.println();
+        for (String mix : SyntheticCorpus.MIXES) {
+            String source = SyntheticCorpus.generate(mix, 8 << 20, 1);
+            double inDfaRun = time(() -> lexer(inDfa).tokenizeToBuffer(source));
+            double hashedRun = time(() -> lexer(hashed).tokenizeToBuffer(source));
+            System.out.printf("%-12s keywords in DFA %6.1f MB/s   keyword hash %6.1f MB/s%n",
+                    mix, source.length() / inDfaRun / 1e3, source.length() / hashedRun / 1e3);
+        }
+    }
+
+    // Tokens, errors and symbol table display of one run.
+    private static String[] lex(CompiledDFA dfa, String source) {
+        ErrorHandler errors = new ErrorHandler();
+        SymbolTable symbols = new SymbolTable();
+        TokenBuffer tokens = new LexicalAnalyzer(dfa, errors, symbols).tokenizeToBuffer(source);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++)
+            text.append(tokens.toToken(i)).append('\n');
+        StringWriter display = new StringWriter();
+        PrintWriter out = new PrintWriter(display);
+        symbols.display(out);
+        out.flush();
+        return new String[] { text.toString(), errors.errors().toString(), display.toString() };
+    }
+
+    // Best time in ms of five runs after warm-up.
+    private static double time(Runnable op) {
+        for (int i = 0; i < 3; i++) op.run();
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            op.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+}
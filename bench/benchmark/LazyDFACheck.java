@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.util.*;
+import automata.CompiledDFA;
+import automata.LazyDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// Differential check and benchmark of automata.LazyDFA. MyLang and the larger benchmark specs
+// are lexed lazily with a roomy cache, a small one and the smallest allowed (4 states, which
+// flushes constantly and falls back to NFA simulation), and every token, line and error must
+// match the compiled DFA on the SyntheticCorpus mixes and random char soup. Then a spec whose
+// full DFA is exponential, (a|b)*a(a|b){n}, is lexed lazily at sizes the eager build cannot
+// reach, with cache counters. With the roomy cache, lexing an input a second time must find
+// every lookup of the first time in the cache, so hits and misses are checked to be exact.
+// Exits with an exception on the first difference.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.LazyDFACheck
+public class LazyDFACheck {
+    private static final int[] CACHE_SIZES = { LazyDFA.DEFAULT_MAX_STATES, 32, 4 };
+
+    public static void main(String[] args) {
+        List<String> inputs = new ArrayList<>();
+        for (String mix : SyntheticCorpus.MIXES)
+            inputs.add(SyntheticCorpus.generate(mix, 1 << 20, 3));
+        Random random = new Random(5);
+        String soup = "ab zA09.-*/\"'\\^\n\t\r=;(e+_\u00e9\u4e00";
+        for (int n = 0; n < 20; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(2000); i > 0; i--) sb.append(soup.charAt(random.nextInt(soup.length())));
+            inputs.add(sb.toString());
+        }
+        check("MyLang", CompilerFrontEnd.myLangSpec(), inputs);
+        check("large spec", SubsetConstructionBenchmark.largeSpec(), inputs);
+        check("unicode spec", SubsetConstructionBenchmark.unicodeSpec(), inputs);
+
+        String corpus = SyntheticCorpus.generate("mixed", 4 << 20, 1);
+        TokenSpec myLang = CompilerFrontEnd.myLangSpec();
+        double eagerBuild = SubsetConstructionBenchmark.time(myLang::compile, 5);
+        double lazyBuild = SubsetConstructionBenchmark.time(() -> myLang.compileLazy(LazyDFA.DEFAULT_MAX_STATES), 5);
+        CompiledDFA eager = myLang.compile();
+        double eagerLex = SubsetConstructionBenchmark.time(() -> lexer(eager).tokenizeToBuffer(corpus), 5);
+        LazyDFA warm = myLang.compileLazy(LazyDFA.DEFAULT_MAX_STATES);
+        double lazyLex = SubsetConstructionBenchmark.time(() -> lexer(warm).tokenizeToBuffer(corpus), 5);
+        System.out.printf("%nMyLang: build %.2f ms eager vs %.2f ms lazy; mixed corpus %.1f MB/s eager vs %.1f MB/s lazy (%s)%n",
+                eagerBuild, lazyBuild, corpus.length() / eagerLex / 1e3, corpus.length() / lazyLex / 1e3, warm.stats());
+
+        System.out.println();
+        for (int n : new int[] { 8, 12, 20 })
+            exponential(n);
+    }
+
+    private static void check(String name, TokenSpec spec, List<String> inputs) {
+        CompiledDFA eager = spec.compile();
+        for (int cacheSize : CACHE_SIZES) {
+            LazyDFA lazy = spec.compileLazy(cacheSize);
+            long tokens = 0;
+            for (String input : inputs)
+                tokens += compare(name + ", cache " + cacheSize, eager, lazy, input);
+            if (cacheSize == LazyDFA.DEFAULT_MAX_STATES)
+                exactCounts(name, lazy, inputs.get(0));
+            System.out.printf("%-14s cache %4d: %d inputs, %d tokens identical (%d compiled states); %s%n",
+                    name, cacheSize, inputs.size(), tokens, eager.stateCount, lazy.stats());
+        }
+    }
+
+    // Lexes the input twice; the second time every lookup must be a hit.
+    private static void exactCounts(String name, LazyDFA lazy, String input) {
+        long hits = lazy.hits(), misses = lazy.misses();
+        lexer(lazy).tokenizeToBuffer(input);
+        long lookups = lazy.hits() - hits + lazy.misses() - misses;
+        hits = lazy.hits();
+        misses = lazy.misses();
+        lexer(lazy).tokenizeToBuffer(input);
+        if (lazy.misses() != misses || lazy.hits() - hits != lookups)
+            throw new IllegalStateException(name + ": second pass made " + (lazy.hits() - hits) + " hits and "
+                    + (lazy.misses() - misses) + " misses, expected " + lookups + " hits");
+    }
+
+    // Words of random a's and b's; tokens T = (a|b)*a(a|b){n} and, for the rest, W = (a|b)+.
+    // The full DFA has to remember the last n+1 chars, so it has over 2^(n+1) states.
+    private static void exponential(int n) {
+        TokenSpec spec = new TokenSpec().add("T", "(a|b)*a" + "(a|b)".repeat(n), 2).add("W", "(a|b)(a|b)*", 1);
+        Random random = new Random(n);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1 << 20) {
+            for (int i = 8 + random.nextInt(120); i > 0; i--) sb.append(random.nextBoolean() ? 'a' : 'b');
+            sb.append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+        String input = sb.toString();
+        String eager = "not built";
+        TokenBuffer expected = null;
+        if (n <= 12) {
+            long start = System.nanoTime();
+            CompiledDFA dfa = spec.compile();
+            eager = String.format("%d states, built in %.0f ms", dfa.stateCount, (System.nanoTime() - start) / 1e6);
+            expected = lexer(dfa).tokenizeToBuffer(input);
+        }
+        System.out.printf("(a|b)*a(a|b){%d}: compiled DFA %s%n", n, eager);
+        for (int cacheSize : CACHE_SIZES) {
+            LazyDFA lazy = spec.compileLazy(cacheSize);
+            long start = System.nanoTime();
+            TokenBuffer actual = lexer(lazy).tokenizeToBuffer(input);
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (expected == null) expected = actual; // the largest cache is the reference
+            else same("(a|b)*a(a|b){" + n + "}, cache " + cacheSize, expected, actual);
+            System.out.printf("  lazy, cache %4d: %7.1f MB/s  %s%n", cacheSize, input.length() / ms / 1e3, lazy.stats());
+        }
+    }
+
+    private static int compare(String name, CompiledDFA eager, LazyDFA lazy, String source) {
+        ErrorHandler eagerErrors = new ErrorHandler(), lazyErrors = new ErrorHandler();
+        TokenBuffer expected = new LexicalAnalyzer(eager, eagerErrors, new SymbolTable()).tokenizeToBuffer(source);
+        TokenBuffer actual = new LexicalAnalyzer(lazy, lazyErrors, new SymbolTable()).tokenizeToBuffer(source);
+        same(name, expected, actual);
+        if (!eagerErrors.errors().equals(lazyErrors.errors()))
+            throw new IllegalStateException(name + ": errors differ");
+        return expected.size();
+    }
+
+    private static void same(String name, TokenBuffer expected, TokenBuffer actual) {
+        if (expected.size() != actual.size())
+            throw new IllegalStateException(name + ": token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.kind(i) != actual.kind(i) || expected.start(i) != actual.start(i)
+                    || expected.length(i) != actual.length(i) || expected.line(i) != actual.line(i))
+                throw new IllegalStateException(name + ": token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+}
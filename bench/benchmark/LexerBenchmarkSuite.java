@@ -0,0 +1,201 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import automata.CompiledDFA;
+import automata.NFABuilder;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+
+// Benchmark suite for the lexer pipeline: RegexToNFA.convert, combineNFAs, convertNFAtoDFA and
+// TokenSpec.compile on the MyLang and a large synthetic spec, then LexicalAnalyzer.tokenize and
+// tokenizeToBuffer on SyntheticCorpus inputs of each mix and size, and the same input as UTF-8
+// bytes decoded and lexed (decode+tokenizeToBuffer) or lexed as bytes (tokenizeUtf8). Every case is warmed up and then
+// run for a fixed time; it reports ms/op, MB/s and tokens/s where they apply, and bytes allocated
+// per op (per-thread counter of com.sun.management.ThreadMXBean).
+//
+// Results can be saved as a baseline (tab-separated, one line per case) and a later run compared
+// against it; the comparison prints each case's time change and flags it when slower than the
+// threshold. Baselines are only comparable on the same machine and JVM settings.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.LexerBenchmarkSuite [options]
+//   --sizes 1k,64k,1m,16m    corpus sizes in chars (k/m/g suffixes; large sizes need -Xmx)
+//   --mixes mixed,comments,identifiers,strings
+//   --time SECONDS           measurement time per case (default 1; warm-up is half of it)
+//   --only compile|lex       run one group only
+//   --save FILE              write the results as a baseline
+//   --compare FILE           compare with a saved baseline
+//   --threshold PERCENT      slowdown reported as a regression (default 10)
+public class LexerBenchmarkSuite {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Outcome of one case; chars and tokens are per op (0 for the compile benchmarks).
+    static class Result {
+        final String name;
+        final double msPerOp, bytesPerOp;
+        final long chars, tokens;
+
+        Result(String name, double msPerOp, double bytesPerOp, long chars, long tokens) {
+            this.name = name;
+            this.msPerOp = msPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.chars = chars;
+            this.tokens = tokens;
+        }
+
+        double megabytesPerSecond() { return chars / (double) (1 << 20) / (msPerOp / 1000); }
+        double tokensPerSecond() { return tokens / (msPerOp / 1000); }
+    }
+
+    private static double seconds = 1;
+    private static Object sink; // keeps results reachable so the work is not optimised away
+
+    public static void main(String[] args) throws IOException {
+        List<String> sizes = List.of("1k", "64k", "1m", "16m");
+        List<String> mixes = Arrays.asList(SyntheticCorpus.MIXES);
+        String only = null;
+        Path save = null, compare = null;
+        double threshold = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = Arrays.asList(args[++i].split(","));
+                case "--mixes" -> mixes = Arrays.asList(args[++i].split(","));
+                case "--time" -> seconds = Double.parseDouble(args[++i]);
+                case "--only" -> only = args[++i];
+                case "--save" -> save = Paths.get(args[++i]);
+                case "--compare" -> compare = Paths.get(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!THREADS.isThreadAllocatedMemorySupported())
+            System.out.println("(allocation counters unavailable on this JVM; bytes/op shows 0)");
+        else
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        List<Result> results = new ArrayList<>();
+        if (only == null || only.equals("compile")) {
+            compileCases("mylang", CompilerFrontEnd.myLangSpec(), results);
+            compileCases("large", SubsetConstructionBenchmark.largeSpec(), results);
+        }
+        if (only == null || only.equals("lex")) {
+            CompiledDFA dfa = CompilerFrontEnd.myLangSpec().compile();
+            for (String mix : mixes)
+                for (String size : sizes)
+                    lexCases(dfa, mix, size, results);
+        }
+        if (save != null) {
+            save(results, save);
+            System.out.println("Baseline written to " + save);
+        }
+        if (compare != null)
+            compare(results, load(compare), threshold);
+    }
+
+    private static void compileCases(String label, TokenSpec spec, List<Result> results) {
+        // RegexToNFA.convert for every token regex, into a fresh builder.
+        results.add(report(measure("convert/" + label, 0, 0, () -> {
+            NFABuilder builder = new NFABuilder();
+            for (TokenSpec.Entry entry : spec.entries())
+                NFABuilder.RegexToNFA.convert(builder, entry.regex);
+            return builder;
+        })));
+        // Token NFAs plus combineNFAs, i.e. the master NFA in CSR form.
+        results.add(report(measure("combineNFAs/" + label, 0, 0, () -> SubsetConstructionBenchmark.buildNFA(spec))));
+        NFABuilder.NFA nfa = SubsetConstructionBenchmark.buildNFA(spec);
+        results.add(report(measure("convertNFAtoDFA/" + label, 0, 0, () -> NFABuilder.convertNFAtoDFA(nfa))));
+        results.add(report(measure("compile/" + label, 0, 0, spec::compile)));
+    }
+
+    private static void lexCases(CompiledDFA dfa, String mix, String size, List<Result> results) {
+        String source = SyntheticCorpus.generate(mix, SyntheticCorpus.parseSize(size), 42);
+        int tokens = lexer(dfa).tokenizeToBuffer(source).size();
+        String suffix = "/" + mix + "/" + size;
+        results.add(report(measure("tokenize" + suffix, source.length(), tokens, () -> lexer(dfa).tokenize(source))));
+        results.add(report(measure("tokenizeToBuffer" + suffix, source.length(), tokens, () -> lexer(dfa).tokenizeToBuffer(source))));
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        results.add(report(measure("decode+tokenizeToBuffer" + suffix, utf8.length, tokens,
+                () -> lexer(dfa).tokenizeToBuffer(new String(utf8, StandardCharsets.UTF_8)))));
+        results.add(report(measure("tokenizeUtf8" + suffix, utf8.length, tokens, () -> lexer(dfa).tokenizeUtf8(utf8))));
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+
+    // Warms up for half the measurement time, then runs whole ops until the time is used up
+    // (at least three), tracking wall time and bytes allocated by this thread.
+    static Result measure(String name, long chars, long tokens, java.util.function.Supplier<Object> op) {
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+        do sink = op.get(); while (System.nanoTime() < warmupEnd);
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime(), deadline = start + (long) (seconds * 1e9), now;
+        int ops = 0;
+        do {
+            sink = op.get();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline || ops < 3);
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        sink = null;
+        return new Result(name, (now - start) / 1e6 / ops, allocated / (double) ops, chars, tokens);
+    }
+
+    private static Result report(Result r) {
+        if (r.chars == 0)
+            System.out.printf("%-40s %12.4f ms/op %14s %16s %14.0f B/op%n", r.name, r.msPerOp, "", "", r.bytesPerOp);
+        else
+            System.out.printf("%-40s %12.4f ms/op %9.1f MB/s %10.0f tok/s %14.0f B/op%n",
+                    r.name, r.msPerOp, r.megabytesPerSecond(), r.tokensPerSecond(), r.bytesPerOp);
+        return r;
+    }
+
+    private static void save(List<Result> results, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.printf("# Java %s, %s %s, %d processors%n", System.getProperty("java.version"),
+                    System.getProperty("os.name"), System.getProperty("os.arch"), Runtime.getRuntime().availableProcessors());
+            out.println("# case\tms/op\tbytes/op\tchars/op\ttokens/op");
+            for (Result r : results)
+                out.printf(Locale.ROOT, "%s\t%.6f\t%.0f\t%d\t%d%n", r.name, r.msPerOp, r.bytesPerOp, r.chars, r.tokens);
+        }
+    }
+
+    private static Map<String, Result> load(Path file) throws IOException {
+        Map<String, Result> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] f = line.split("\t");
+            baseline.put(f[0], new Result(f[0], Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+                    Long.parseLong(f[3]), Long.parseLong(f[4])));
+        }
+        return baseline;
+    }
+
+    private static void compare(List<Result> results, Map<String, Result> baseline, double threshold) {
+        System.out.printf("%nCompared with baseline (time change; + is slower):%n");
+        int regressions = 0;
+        for (Result r : results) {
+            Result base = baseline.get(r.name);
+            if (base == null) {
+                System.out.printf("%-40s %10s%n", r.name, "new");
+                continue;
+            }
+            double change = (r.msPerOp / base.msPerOp - 1) * 100;
+            double allocChange = base.bytesPerOp == 0 ? 0 : (r.bytesPerOp / base.bytesPerOp - 1) * 100;
+            boolean regression = change > threshold;
+            if (regression) regressions++;
+            System.out.printf("%-40s %+9.1f%%  alloc %+7.1f%%%s%n", r.name, change, allocChange, regression ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d of %d cases slower than the baseline by more than %.0f%%%n", regressions, results.size(), threshold);
+    }
+}
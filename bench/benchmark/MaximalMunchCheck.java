@@ -0,0 +1,106 @@
+package benchmark;
+
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexerMetrics;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// Regression check for LexicalAnalyzer.linearTime. Each case is an input on which maximal munch
+// backtracks: for the two small specs plain scanning rescans the rest of the input from every
+// position (quadratic), the MyLang inputs are unterminated comments, strings and long '-' digit
+// runs. The check counts rather than times: the chars the scanner examined (every input char
+// plus the backtrack LexerMetrics records) at 64K and 256K chars must grow by at most
+// MAX_GROWTH (4 for linear scaling, 16 for quadratic), and both modes must produce the same
+// tokens and errors. Linear-time times and plain-mode counts (on inputs 16x shorter, so the
+// quadratic cases finish) are printed for comparison. Exits with an exception on failure.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.MaximalMunchCheck
+public class MaximalMunchCheck {
+    private static final double MAX_GROWTH = 5;
+
+    interface Input { String of(int n); }
+
+    public static void main(String[] args) {
+        CompiledDFA rescanning = new TokenSpec().add("A", "a", 1).add("AAB", "a(a)*b", 1).compile();
+        CompiledDFA failing = new TokenSpec().add("AB", "(a)*b", 1).compile();
+        CompiledDFA myLang = CompilerFrontEnd.myLangSpec().compile();
+
+        check("a^n, tokens a | a*b", rescanning, n -> "a".repeat(n));
+        check("a^n, token a*b only", failing, n -> "a".repeat(n));
+        check("a^n b a^n, tokens a | a*b", rescanning, n -> "a".repeat(n / 2) + "b" + "a".repeat(n / 2));
+        check("MyLang: /* .... (unterminated)", myLang, n -> "/*" + ".".repeat(n - 2));
+        check("MyLang: (/* ..)^n", myLang, n -> "/* ..".repeat(n / 5));
+        check("MyLang: \" ^^^^ (unterminated)", myLang, n -> "\"" + "^".repeat(n - 1));
+        check("MyLang: -1-1-1...", myLang, n -> "-1".repeat(n / 2));
+        check("MyLang: 1.1.1.1...", myLang, n -> "1.".repeat(n / 2));
+
+        String corpus = SyntheticCorpus.generate("mixed", 4 << 20, 1);
+        compare(myLang, corpus);
+        double plain = SubsetConstructionBenchmark.time(() -> lexer(myLang, false).tokenizeToBuffer(corpus), 5);
+        double linear = SubsetConstructionBenchmark.time(() -> lexer(myLang, true).tokenizeToBuffer(corpus), 5);
+        System.out.printf("%nMixed corpus (4 MB): plain %.1f MB/s, linear-time %.1f MB/s%n",
+                corpus.length() / plain / 1e3, corpus.length() / linear / 1e3);
+    }
+
+    private static void check(String name, CompiledDFA dfa, Input input) {
+        int small = 1 << 12, large = 4 * small;
+        compare(dfa, input.of(small));
+        compare(dfa, input.of(large));
+        long linearSmall = examined(dfa, input.of(small * 16), true);
+        long linearLarge = examined(dfa, input.of(large * 16), true);
+        long plainSmall = examined(dfa, input.of(small), false);
+        long plainLarge = examined(dfa, input.of(large), false);
+        double growth = linearLarge / (double) linearSmall;
+        double linearSmallMs = timeLex(dfa, input.of(small * 16), true);
+        double linearLargeMs = timeLex(dfa, input.of(large * 16), true);
+        System.out.printf("%-34s linear-time %9d -> %9d chars (x%4.1f) %6.2f -> %6.2f ms   plain %9d -> %10d chars (x%4.1f)%n",
+                name, linearSmall, linearLarge, growth, linearSmallMs, linearLargeMs, plainSmall, plainLarge, plainLarge / (double) plainSmall);
+        if (growth > MAX_GROWTH)
+            throw new IllegalStateException(name + ": linear-time mode examined x" + String.format("%.1f", growth)
+                    + " the chars for 4x the input");
+    }
+
+    // Best of several runs from a clean heap (inputs with an error per char keep a growing number
+    // of messages alive while lexing, so their times grow faster than the chars examined).
+    private static double timeLex(CompiledDFA dfa, String source, boolean linearTime) {
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < 7; run++) {
+            System.gc();
+            long start = System.nanoTime();
+            lexer(dfa, linearTime).tokenizeToBuffer(source);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    private static void compare(CompiledDFA dfa, String source) {
+        ErrorHandler plainErrors = new ErrorHandler(), linearErrors = new ErrorHandler();
+        TokenBuffer expected = new LexicalAnalyzer(dfa, plainErrors, new SymbolTable()).tokenizeToBuffer(source);
+        TokenBuffer actual = new LexicalAnalyzer(dfa, linearErrors, new SymbolTable()).linearTime(true).tokenizeToBuffer(source);
+        if (expected.size() != actual.size())
+            throw new IllegalStateException("Token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.kind(i) != actual.kind(i) || expected.start(i) != actual.start(i)
+                    || expected.length(i) != actual.length(i) || expected.line(i) != actual.line(i))
+                throw new IllegalStateException("Token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+        if (!plainErrors.errors().equals(linearErrors.errors()))
+            throw new IllegalStateException("Errors differ");
+    }
+
+    // Chars the scanner examined: every char of the input plus every char it read past the end of
+    // a token (or bad char) and had to scan again.
+    private static long examined(CompiledDFA dfa, String source, boolean linearTime) {
+        LexerMetrics metrics = new LexerMetrics();
+        new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable(), metrics).linearTime(linearTime).tokenizeToBuffer(source);
+        LexerMetrics.Snapshot counts = metrics.snapshot();
+        return counts.chars + counts.backtrackChars;
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa, boolean linearTime) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable()).linearTime(linearTime);
+    }
+}
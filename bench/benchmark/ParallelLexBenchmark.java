@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import token.TokenBuffer;
+
+// Throughput of LexicalAnalyzer.tokenizeParallel at 1..N threads against tokenizeToBuffer, on a
+// synthetic input (or a given file) with long comments and strings crossing chunk boundaries.
+// Every parallel result is checked token-for-token against the sequential one.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.ParallelLexBenchmark [megabytes|file] [iterations]
+public class ParallelLexBenchmark {
+    public static void main(String[] args) throws Exception {
+        String source = args.length > 0 && !args[0].matches("\\d+")
+                ? Files.readString(Paths.get(args[0]))
+                : syntheticSource((args.length > 0 ? Integer.parseInt(args[0]) : 32) << 20);
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        CompiledDFA dfa = CompilerFrontEnd.myLangSpec().compile();
+        double megabytes = source.length() / (double) (1 << 20);
+
+        TokenBuffer expected = lexer(dfa).tokenizeToBuffer(source);
+        double sequentialMs = SubsetConstructionBenchmark.time(() -> lexer(dfa).tokenizeToBuffer(source), iterations);
+        System.out.printf("%.1f MB, %d tokens%n", megabytes, expected.size());
+        System.out.printf("  sequential   %8.1f ms  %7.1f MB/s%n", sequentialMs, megabytes / sequentialMs * 1000);
+
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            int chunkCount = threads * 4;
+            check(expected, lexer(dfa).tokenizeParallel(source, pool, chunkCount));
+            double ms = SubsetConstructionBenchmark.time(() -> lexer(dfa).tokenizeParallel(source, pool, chunkCount), iterations);
+            System.out.printf("  %2d thread(s) %8.1f ms  %7.1f MB/s  (%.2fx)%n", threads, ms, megabytes / ms * 1000, sequentialMs / ms);
+            pool.shutdown();
+        }
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+
+    private static void check(TokenBuffer expected, TokenBuffer actual) {
+        if (expected.size() != actual.size())
+            throw new IllegalStateException("Token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.kind(i) != actual.kind(i) || expected.start(i) != actual.start(i)
+                    || expected.length(i) != actual.length(i) || expected.line(i) != actual.line(i))
+                throw new IllegalStateException("Token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+    }
+
+    static String syntheticSource(int length) {
+        String[] pieces = { "int ", "float ", "x", "counter", "_tmp", " = ", "42", "3.14", "-2.5e+10", "'a'",
+                "\"hello\"", " + ", " * ", " == ", " && ", "(", ")", "{", "}", ";", ", ", "\n", "\n",
+                "if ", "while ", "return ", "System.out.println", "// note\n", "/* short */", "@" };
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(length + 4096);
+        while (sb.length() < length) {
+            int pick = random.nextInt(400);
+            if (pick == 0) { // block comment long enough to cross chunk boundaries
+                sb.append("/* ");
+                for (int i = random.nextInt(1 << 19); i > 0; i -= 40)
+                    sb.append("commented out code line ......... \n");
+                sb.append("*/\n");
+            } else if (pick == 1) {
+                sb.append('"');
+                for (int i = random.nextInt(1 << 16); i > 0; i--)
+                    sb.append((char) ('a' + i % 26));
+                sb.append("\"\n");
+            } else {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.util.*;
+import automata.CompiledDFA;
+import automata.DFAMinimizer;
+import automata.NFABuilder;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// NFAs built from the regexes as written against those built after automata.RegexOptimizer, on
+// the MyLang, large and unicode benchmark specs: NFA states per token and combined, DFA states
+// before and after minimization, and subset construction time. The minimized DFAs must have the
+// same size and lex every SyntheticCorpus mix to the same tokens. Random regexes over a small
+// alphabet are checked the same way first, on random strings.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.RegexOptimizerBenchmark [iterations]
+public class RegexOptimizerBenchmark {
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        Random random = new Random(25);
+        for (int n = 0; n < 2000; n++) {
+            String regex = randomRegex(random, 4);
+            TokenSpec spec = new TokenSpec().add("T", regex, 1);
+            CompiledDFA written = minimized(spec, false), optimized = minimized(spec, true);
+            if (written.stateCount != optimized.stateCount)
+                throw new IllegalStateException(regex + ": minimized DFAs differ");
+            for (int k = 0; k < 50; k++) {
+                StringBuilder input = new StringBuilder();
+                for (int i = random.nextInt(8); i > 0; i--) input.append("abc.".charAt(random.nextInt(4)));
+                if (written.acceptKindOf(input) != optimized.acceptKindOf(input))
+                    throw new IllegalStateException(regex + ": differs on \"" + input + "\"");
+            }
+        }
+        System.out.println("Random regexes: 2000 checked, same language either way");
+        System.out.println();
+        run("MyLang spec", CompilerFrontEnd.myLangSpec(), iterations, true);
+        run("Large spec (200 keywords, Latin-1 identifiers)", SubsetConstructionBenchmark.largeSpec(), Math.max(1, iterations / 4), false);
+        run("Unicode identifier spec", SubsetConstructionBenchmark.unicodeSpec(), Math.max(1, iterations / 4), false);
+    }
+
+    private static void run(String label, TokenSpec spec, int iterations, boolean perToken) {
+        System.out.println(label + ":");
+        if (perToken) {
+            for (int kind = 0; kind < spec.size(); kind++) {
+                NFABuilder written = new NFABuilder(), optimized = new NFABuilder();
+                int before = NFABuilder.countStates(written.build(spec.buildNFA(written, kind, false).start));
+                int after = NFABuilder.countStates(optimized.build(spec.buildNFA(optimized, kind, true).start));
+                System.out.printf("  %-20s %4d -> %4d NFA states%n", spec.get(kind).name, before, after);
+            }
+        }
+        NFABuilder.NFA written = nfa(spec, false), optimized = nfa(spec, true);
+        NFABuilder.DFAState writtenDfa = NFABuilder.convertNFAtoDFA(written), optimizedDfa = NFABuilder.convertNFAtoDFA(optimized);
+        CompiledDFA writtenMin = CompiledDFA.compile(DFAMinimizer.minimize(writtenDfa), spec.names());
+        CompiledDFA optimizedMin = CompiledDFA.compile(DFAMinimizer.minimize(optimizedDfa), spec.names());
+        if (writtenMin.stateCount != optimizedMin.stateCount || writtenMin.classCount != optimizedMin.classCount)
+            throw new IllegalStateException(label + ": minimized DFAs differ");
+        for (String mix : SyntheticCorpus.MIXES) {
+            String source = SyntheticCorpus.generate(mix, 1 << 18, 6);
+            if (!tokens(writtenMin, source).equals(tokens(optimizedMin, source)))
+                throw new IllegalStateException(label + ": tokens differ on " + mix);
+        }
+        double writtenMs = SubsetConstructionBenchmark.time(() -> NFABuilder.convertNFAtoDFA(written), iterations);
+        double optimizedMs = SubsetConstructionBenchmark.time(() -> NFABuilder.convertNFAtoDFA(optimized), iterations);
+        System.out.printf("  combined NFA %5d -> %5d states; DFA %4d -> %4d states, minimized %d either way%n",
+                NFABuilder.countStates(written), NFABuilder.countStates(optimized),
+                NFABuilder.countDFAStates(writtenDfa), NFABuilder.countDFAStates(optimizedDfa), optimizedMin.stateCount);
+        System.out.printf("  subset construction %8.3f -> %8.3f ms/op (%.1fx); tokens identical on every mix%n",
+                writtenMs, optimizedMs, writtenMs / optimizedMs);
+    }
+
+    private static String randomRegex(Random random, int depth) {
+        int pick = depth == 0 ? random.nextInt(3) : random.nextInt(9);
+        switch (pick) {
+            case 0: return String.valueOf("abc".charAt(random.nextInt(3)));
+            case 1: return random.nextBoolean() ? "[a-b]" : "[ac]";
+            case 2: return "\\.";
+            case 3: case 4: return randomRegex(random, depth - 1) + randomRegex(random, depth - 1);
+            case 5: case 6: return "(" + randomRegex(random, depth - 1) + "|" + randomRegex(random, depth - 1) + ")";
+            default: return "(" + randomRegex(random, depth - 1) + ")" + "*+?".charAt(random.nextInt(3));
+        }
+    }
+
+    private static CompiledDFA minimized(TokenSpec spec, boolean optimize) {
+        return CompiledDFA.compile(DFAMinimizer.minimize(NFABuilder.convertNFAtoDFA(nfa(spec, optimize))), spec.names());
+    }
+
+    private static NFABuilder.NFA nfa(TokenSpec spec, boolean optimize) {
+        NFABuilder builder = new NFABuilder();
+        List<NFABuilder.Fragment> nfaList = new ArrayList<>();
+        for (int kind = 0; kind < spec.size(); kind++)
+            nfaList.add(spec.buildNFA(builder, kind, optimize));
+        return builder.combineNFAs(nfaList);
+    }
+
+    private static String tokens(CompiledDFA dfa, String source) {
+        ErrorHandler errors = new ErrorHandler();
+        TokenBuffer tokens = new LexicalAnalyzer(dfa, errors, new SymbolTable()).tokenizeToBuffer(source);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++)
+            text.append(tokens.toToken(i)).append('\n');
+        return text.append(errors.errors()).toString();
+    }
+}
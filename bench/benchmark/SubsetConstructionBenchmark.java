@@ -0,0 +1,148 @@
+package benchmark;
+
+import java.util.*;
+import automata.NFABuilder;
+import compiler.CompilerFrontEnd;
+import lexer.TokenSpec;
+
+// Compares NFABuilder.convertNFAtoDFA with the original HashSet/String-key subset construction
+// (kept below as legacyConvert with its helpers, on a per-char alphabet) on the MyLang spec, a larger synthetic
+// spec with many keywords and Latin-1 identifiers, and a spec with CJK/Cyrillic/Greek identifiers.
+// The legacy version is skipped when the per-char alphabet is too large for it to finish quickly.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.SubsetConstructionBenchmark [iterations]
+public class SubsetConstructionBenchmark {
+    private static final int LEGACY_ALPHABET_LIMIT = 2000;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        run("MyLang spec", CompilerFrontEnd.myLangSpec(), iterations);
+        run("Large spec (200 keywords, Latin-1 identifiers)", largeSpec(), Math.max(1, iterations / 4));
+        run("Unicode identifier spec", unicodeSpec(), Math.max(1, iterations / 4));
+    }
+
+    private static void run(String label, TokenSpec spec, int iterations) {
+        NFABuilder.NFA nfa = buildNFA(spec);
+        int current = NFABuilder.countDFAStates(NFABuilder.convertNFAtoDFA(nfa));
+        int alphabet = getAlphabet(nfa).size();
+        if (alphabet > LEGACY_ALPHABET_LIMIT) {
+            double currentMs = time(() -> NFABuilder.convertNFAtoDFA(nfa), iterations);
+            System.out.printf("%s: %d NFA states, %d DFA states, %d-char alphabet%n", label, NFABuilder.countStates(nfa), current, alphabet);
+            System.out.printf("  legacy  skipped%n");
+            System.out.printf("  current %10.3f ms/op%n", currentMs);
+            return;
+        }
+        int legacy = legacyConvert(nfa);
+        if (current != legacy)
+            throw new IllegalStateException(label + ": DFA state count differs (" + current + " vs " + legacy + ")");
+
+        double currentMs = time(() -> NFABuilder.convertNFAtoDFA(nfa), iterations);
+        double legacyMs = time(() -> legacyConvert(nfa), iterations);
+        System.out.printf("%s: %d NFA states, %d DFA states%n", label, NFABuilder.countStates(nfa), current);
+        System.out.printf("  legacy  %10.3f ms/op%n", legacyMs);
+        System.out.printf("  current %10.3f ms/op  (%.1fx)%n", currentMs, legacyMs / currentMs);
+    }
+
+    static NFABuilder.NFA buildNFA(TokenSpec spec) {
+        NFABuilder builder = new NFABuilder();
+        List<NFABuilder.Fragment> nfaList = new ArrayList<>();
+        for (int kind = 0; kind < spec.size(); kind++)
+            nfaList.add(spec.buildNFA(builder, kind));
+        return builder.combineNFAs(nfaList);
+    }
+
+    static TokenSpec largeSpec() {
+        TokenSpec spec = CompilerFrontEnd.myLangSpec();
+        StringBuilder keywords = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) keywords.append('|');
+            int len = 3 + random.nextInt(8);
+            for (int j = 0; j < len; j++)
+                keywords.append((char) ('a' + random.nextInt(26)));
+        }
+        spec.add("EXTRA_KEYWORD", keywords.toString(), 6);
+        spec.add("WIDE_IDENTIFIER", "[A-ZÀ-ÿ]([a-zA-Z0-9_À-ÿ])*", 4);
+        return spec;
+    }
+
+    static TokenSpec unicodeSpec() {
+        TokenSpec spec = CompilerFrontEnd.myLangSpec();
+        spec.add("UNICODE_IDENTIFIER", "[A-ZÀ-ɏͰ-ϿЀ-ӿ一-鿿]([a-zA-Z0-9_À-ɏͰ-ϿЀ-ӿ一-鿿])*", 4);
+        return spec;
+    }
+
+    static double time(Runnable op, int iterations) {
+        for (int i = 0; i < Math.max(3, iterations / 2); i++) op.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) op.run();
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    // The subset construction as originally written: a per-char alphabet, HashSet state sets, a
+    // sorted comma-joined String key per explored transition, and a fresh ε-closure for every
+    // (state, symbol) pair. Returns the number of DFA states.
+    static int legacyConvert(NFABuilder.NFA nfa) {
+        Set<Integer> startSet = epsilonClosure(nfa, new HashSet<>(Arrays.asList(nfa.start)));
+        Map<String, Map<Character, Set<Integer>>> dfaStates = new HashMap<>();
+        dfaStates.put(getStatesKey(startSet), new HashMap<>());
+        Queue<Set<Integer>> unmarked = new LinkedList<>();
+        unmarked.add(startSet);
+        Set<Character> alphabet = getAlphabet(nfa);
+        while (!unmarked.isEmpty()) {
+            Set<Integer> dstate = unmarked.poll();
+            Map<Character, Set<Integer>> transitions = dfaStates.get(getStatesKey(dstate));
+            for (Character symbol : alphabet) {
+                Set<Integer> moveSet = move(nfa, dstate, symbol);
+                if (moveSet.isEmpty()) continue;
+                Set<Integer> closure = epsilonClosure(nfa, moveSet);
+                String key = getStatesKey(closure);
+                if (!dfaStates.containsKey(key)) {
+                    dfaStates.put(key, new HashMap<>());
+                    unmarked.add(closure);
+                }
+                transitions.put(symbol, closure);
+            }
+        }
+        return dfaStates.size();
+    }
+
+    static Set<Integer> epsilonClosure(NFABuilder.NFA nfa, Set<Integer> states) {
+        Set<Integer> closure = new HashSet<>(states);
+        Deque<Integer> stack = new ArrayDeque<>(states);
+        while (!stack.isEmpty()) {
+            int s = stack.pop();
+            for (int e = nfa.epsilonStart[s]; e < nfa.epsilonStart[s + 1]; e++)
+                if (closure.add(nfa.epsilonTarget[e])) stack.push(nfa.epsilonTarget[e]);
+        }
+        return closure;
+    }
+
+    static Set<Integer> move(NFABuilder.NFA nfa, Set<Integer> states, char symbol) {
+        Set<Integer> result = new HashSet<>();
+        for (int s : states)
+            for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++)
+                if (nfa.edgeLo[e] <= symbol && symbol <= nfa.edgeHi[e])
+                    result.add(nfa.edgeTarget[e]);
+        return result;
+    }
+
+    static String getStatesKey(Set<Integer> states) {
+        List<Integer> ids = new ArrayList<>(states);
+        Collections.sort(ids);
+        StringBuilder sb = new StringBuilder();
+        for (Integer id : ids)
+            sb.append(id).append(",");
+        return sb.toString();
+    }
+
+    // Every individual char with an edge (ranges expanded).
+    static Set<Character> getAlphabet(NFABuilder.NFA nfa) {
+        Set<Character> alphabet = new HashSet<>();
+        for (int s : nfa.reachable())
+            for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++)
+                for (int c = nfa.edgeLo[e]; c <= nfa.edgeHi[e]; c++)
+                    alphabet.add((char) c);
+        return alphabet;
+    }
+}
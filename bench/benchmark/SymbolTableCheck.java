@@ -0,0 +1,218 @@
+package benchmark;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolInterner;
+import lexer.SymbolTable;
+import token.Token;
+import token.TokenBuffer;
+
+// Differential check of the interned, arena-scoped SymbolTable against the stack of HashMaps it
+// replaced (LegacySymbolTable below): random enter/exit/add/remove/lookup sequences must give the
+// same sizes, lookups and display output, including scopes big enough to make the HashMaps
+// resize. The table the lexer fills must display like the legacy table fed the same identifiers,
+// and tables sharing an interner must agree on ids. Then times a scope-heavy workload (enter,
+// bind, shadowed lookups, exit), interning spans against new String + HashMap (by a table on
+// its own and by one sharing an interner), and lexing the identifier-heavy mix.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.SymbolTableCheck
+public class SymbolTableCheck {
+    static volatile int sink; // keeps the timed lookups live
+
+    public static void main(String[] args) {
+        Random random = new Random(23);
+        String[] names = new String[400];
+        for (int i = 0; i < names.length; i++) names[i] = "v" + Integer.toString(random.nextInt(1 << 30), 36);
+        for (int run = 0; run < 200; run++) {
+            SymbolTable table = new SymbolTable();
+            LegacySymbolTable legacy = new LegacySymbolTable();
+            int pool = 5 + random.nextInt(run < 100 ? 40 : names.length - 5);
+            for (int op = 0; op < 3000; op++) {
+                String name = names[random.nextInt(pool)];
+                switch (random.nextInt(10)) {
+                    case 0 -> { table.enterScope(); legacy.enterScope(); }
+                    case 1 -> { table.exitScope(); legacy.exitScope(); }
+                    case 2 -> { table.removeSymbol(name); legacy.removeSymbol(name); }
+                    case 3, 4 -> {
+                        if (!String.valueOf(table.lookup(name)).equals(String.valueOf(legacy.lookup(name))))
+                            throw new IllegalStateException("Run " + run + ": lookup of " + name + " differs");
+                    }
+                    default -> {
+                        int line = random.nextInt(1000);
+                        table.addSymbol(new Token("IDENTIFIER", name, line));
+                        legacy.addSymbol(new Token("IDENTIFIER", name, line));
+                    }
+                }
+                if (table.size() != legacy.size())
+                    throw new IllegalStateException("Run " + run + ": size " + table.size() + " vs " + legacy.size());
+                if (op % 500 == 499 && !display(table).equals(display(legacy)))
+                    throw new IllegalStateException("Run " + run + ": display differs");
+            }
+        }
+        System.out.println("Random operations: 200 runs x 3000 ops, sizes, lookups and display identical");
+
+        CompiledDFA dfa = CompilerFrontEnd.myLangSpec().compile();
+        int identifier = dfa.kindOf("IDENTIFIER");
+        for (String mix : SyntheticCorpus.MIXES) {
+            String source = SyntheticCorpus.generate(mix, 1 << 18, 5);
+            SymbolTable table = new SymbolTable();
+            TokenBuffer tokens = new LexicalAnalyzer(dfa, new ErrorHandler(), table).tokenizeToBuffer(source);
+            LegacySymbolTable legacy = new LegacySymbolTable();
+            for (int i = 0; i < tokens.size(); i++)
+                if (tokens.kind(i) == identifier)
+                    legacy.addSymbol(new Token("IDENTIFIER", tokens.lexeme(i).toString(), tokens.line(i)));
+            if (!display(table).equals(display(legacy)))
+                throw new IllegalStateException(mix + ": lexer's symbol table differs");
+        }
+        System.out.println("Lexer symbol tables: display identical to the legacy table on every mix");
+
+        SymbolInterner shared = new SymbolInterner();
+        SymbolTable first = new SymbolTable(shared), second = new SymbolTable(shared);
+        for (int i = names.length - 1; i >= 0; i--) second.intern(names[i].toCharArray(), 0, names[i].length());
+        for (String name : names) {
+            char[] span = ("(" + name + ")").toCharArray();
+            int id = first.intern(span, 1, span.length - 1);
+            if (id != second.intern(name.toCharArray(), 0, name.length()) || !shared.name(id).equals(name))
+                throw new IllegalStateException("Shared interner: ids differ for " + name);
+        }
+        System.out.println("Shared interner: " + shared.size() + " names, same ids in both tables");
+
+        System.out.println();
+        for (int depth : new int[] { 4, 32 }) {
+            int scopeNames = 16;
+            double legacyMs = time(() -> scopes(new LegacyScopes(), names, depth, scopeNames));
+            double arenaMs = time(() -> scopes(new ArenaScopes(), names, depth, scopeNames));
+            System.out.printf("Scopes nested %2d deep, %d names each: legacy %7.1f ms   arena %7.1f ms%n", depth, scopeNames, legacyMs, arenaMs);
+        }
+
+        char[] text = SyntheticCorpus.generate("identifiers", 8 << 20, 9).toCharArray();
+        int[] spans = identifierSpans(text);
+        double mapMs = time(() -> {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < spans.length; i += 2)
+                ids.computeIfAbsent(new String(text, spans[i], spans[i + 1] - spans[i]), name -> ids.size());
+        });
+        double internMs = time(() -> {
+            SymbolTable table = new SymbolTable();
+            for (int i = 0; i < spans.length; i += 2) table.intern(text, spans[i], spans[i + 1]);
+        });
+        double sharedMs = time(() -> {
+            SymbolTable table = new SymbolTable(new SymbolInterner());
+            for (int i = 0; i < spans.length; i += 2) table.intern(text, spans[i], spans[i + 1]);
+        });
+        System.out.printf("Interning %d identifier spans: new String + HashMap %7.1f ms   SymbolTable.intern %7.1f ms"
+                + " (%7.1f ms with a shared SymbolInterner)%n", spans.length / 2, mapMs, internMs, sharedMs);
+
+        String source = new String(text);
+        double lexMs = time(() -> new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable()).tokenizeToBuffer(source));
+        System.out.printf("Lexing the identifiers mix: %.1f MB/s%n", text.length / lexMs / 1e3);
+    }
+
+    // Enters depth nested scopes binding every name in each, looks each name up at every level
+    // on the way out, and exits them; repeated over the name pool.
+    private static void scopes(Scopes table, String[] names, int depth, int scopeNames) {
+        Token[] tokens = new Token[names.length];
+        for (int i = 0; i < names.length; i++) tokens[i] = new Token("IDENTIFIER", names[i], i);
+        int hits = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int d = 0; d < depth; d++) {
+                table.enterScope();
+                for (int k = 0; k < scopeNames; k++) table.addSymbol(tokens[(round + d * 7 + k) % names.length]);
+            }
+            for (int d = 0; d < depth; d++) {
+                for (int k = 0; k < scopeNames * 2; k++)
+                    if (table.lookup(names[(round + k * 3) % names.length]) != null) hits++;
+                table.exitScope();
+            }
+        }
+        sink = hits;
+    }
+
+    private static int[] identifierSpans(char[] text) {
+        int[] spans = new int[text.length];
+        int n = 0;
+        for (int i = 0; i < text.length; ) {
+            if (!Character.isLetter(text[i])) { i++; continue; }
+            int start = i;
+            while (i < text.length && (Character.isLetterOrDigit(text[i]) || text[i] == '_')) i++;
+            spans[n++] = start;
+            spans[n++] = i;
+        }
+        return Arrays.copyOf(spans, n);
+    }
+
+    private static String display(SymbolTable table) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        table.display(writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    private static String display(LegacySymbolTable table) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        table.display(writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    // Best time in ms of five runs after warm-up.
+    private static double time(Runnable op) {
+        for (int i = 0; i < 3; i++) op.run();
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            op.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    private interface Scopes {
+        void enterScope();
+        void exitScope();
+        void addSymbol(Token token);
+        Token lookup(String lexeme);
+    }
+
+    private static final class LegacyScopes extends LegacySymbolTable implements Scopes { }
+
+    private static final class ArenaScopes extends SymbolTable implements Scopes { }
+
+    // The original SymbolTable: a stack of HashMaps, searched from the innermost scope out.
+    private static class LegacySymbolTable {
+        private final Stack<Map<String, Token>> scopes = new Stack<>();
+        LegacySymbolTable() { enterScope(); }
+        public void enterScope() { scopes.push(new HashMap<>()); }
+        public void exitScope() { if (scopes.size() > 1) scopes.pop(); }
+        public void addSymbol(Token token) { scopes.peek().put(token.value, token); }
+        public void removeSymbol(String lexeme) { scopes.peek().remove(lexeme); }
+        public int size() {
+            int size = 0;
+            for (Map<String, Token> scope : scopes) size += scope.size();
+            return size;
+        }
+        public Token lookup(String lexeme) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Token t = scopes.get(i).get(lexeme);
+                if (t != null) return t;
+            }
+            return null;
+        }
+        void display(PrintWriter out) {
+            out.println("Symbol Table (Scopes):");
+            for (int i = 0; i < scopes.size(); i++) {
+                out.print("Scope "); out.print(i); out.println(":");
+                for (Token token : scopes.get(i).values()) {
+                    out.print("  "); out.println(token);
+                }
+            }
+        }
+    }
+}
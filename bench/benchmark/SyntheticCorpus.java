@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.util.Random;
+
+// Deterministic MyLang text for the benchmarks. Each mix weights the kinds of source element
+// differently, so the same lexer is measured on comment-heavy, identifier-heavy and string-heavy
+// input as well as a balanced one. The spec treats '.' as a literal dot and [^...] as a plain
+// class, so comment, string and char bodies are drawn from the chars it accepts there (dots;
+// '^' and backslash-dot escapes); ordinary prose would lex as identifiers and operators instead.
+public class SyntheticCorpus {
+    public static final String[] MIXES = { "mixed", "comments", "identifiers", "strings" };
+
+    private static final String[] KEYWORDS = { "global", "local", "const", "int", "float", "bool", "char",
+            "string", "if", "else", "for", "while", "return", "true", "false" };
+    private static final String[] OPERATORS = { " + ", " - ", " * ", " / ", " % ", " = ", " == ", " < ", " > " };
+    private static final String[] DELIMITERS = { "(", ")", "{", "}", ";", ", " };
+    private static final String[] CHARS = { "'^'", "'\\.'" };
+
+    // Weights per element: identifier, keyword, number, string, char, operator, delimiter,
+    // line comment, block comment, newline.
+    private static int[] weights(String mix) {
+        switch (mix) {
+            case "mixed":       return new int[] { 20, 10, 10, 4, 2, 18, 18, 2, 1, 8 };
+            case "comments":    return new int[] { 6, 3, 3, 1, 1, 5, 5, 20, 12, 6 };
+            case "identifiers": return new int[] { 60, 8, 4, 1, 1, 10, 10, 0, 0, 6 };
+            case "strings":     return new int[] { 6, 3, 3, 40, 6, 5, 5, 0, 0, 4 };
+            default: throw new IllegalArgumentException("Unknown corpus mix " + mix + " (expected one of mixed, comments, identifiers, strings)");
+        }
+    }
+
+    public static String generate(String mix, int length, long seed) {
+        int[] weights = weights(mix);
+        int total = 0;
+        for (int w : weights) total += w;
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(length + 256);
+        while (sb.length() < length) {
+            int pick = random.nextInt(total), element = 0;
+            while (pick >= weights[element]) pick -= weights[element++];
+            switch (element) {
+                case 0: word(sb, random, 1 + random.nextInt(12)); sb.append(' '); break;
+                case 1: sb.append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(' '); break;
+                case 2:
+                    if (random.nextInt(4) == 0) sb.append('-');
+                    sb.append(random.nextInt(100000));
+                    if (random.nextBoolean()) sb.append('.').append(random.nextInt(1000));
+                    sb.append(' ');
+                    break;
+                case 3:
+                    sb.append('"');
+                    for (int i = random.nextInt(48); i > 0; i--)
+                        sb.append(random.nextInt(8) == 0 ? "\\." : "^");
+                    sb.append("\" ");
+                    break;
+                case 4: sb.append(CHARS[random.nextInt(CHARS.length)]).append(' '); break;
+                case 5: sb.append(OPERATORS[random.nextInt(OPERATORS.length)]); break;
+                case 6: sb.append(DELIMITERS[random.nextInt(DELIMITERS.length)]); break;
+                case 7: sb.append("//"); dots(sb, random.nextInt(72)); sb.append('\n'); break;
+                case 8:
+                    sb.append("/*");
+                    for (int lines = random.nextInt(6); lines >= 0; lines--) {
+                        dots(sb, random.nextInt(72));
+                        sb.append('\n');
+                    }
+                    sb.append("*/\n");
+                    break;
+                default: sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void word(StringBuilder sb, Random random, int length) {
+        for (int i = 0; i < length; i++)
+            sb.append((char) ('a' + random.nextInt(26)));
+    }
+
+    private static void dots(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++)
+            sb.append('.');
+    }
+
+    // "1k", "64k", "16m", "1g" or a plain char count.
+    public static int parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long scale = 1;
+        switch (s.charAt(s.length() - 1)) {
+            case 'k': scale = 1L << 10; break;
+            case 'm': scale = 1L << 20; break;
+            case 'g': scale = 1L << 30; break;
+        }
+        long value = Long.parseLong(scale == 1 ? s : s.substring(0, s.length() - 1)) * scale;
+        if (value <= 0 || value > Integer.MAX_VALUE - 1024)
+            throw new IllegalArgumentException("Corpus size out of range: " + size);
+        return (int) value;
+    }
+}
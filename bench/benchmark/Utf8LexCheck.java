@@ -0,0 +1,151 @@
+package benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import automata.CompiledDFA;
+import compiler.CompilerFrontEnd;
+import lexer.ErrorHandler;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolTable;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+
+// Differential check of LexicalAnalyzer.tokenizeUtf8: every input is lexed from its UTF-8 bytes
+// and, decoded, by tokenizeToBuffer, and the kinds, lexemes, lines, errors and symbols must
+// agree, with each byte offset matching the char offset it encodes. Inputs are the SyntheticCorpus
+// mixes, short edge cases and random soup mixing ASCII with 2-, 3- and 4-byte chars, on MyLang
+// and the unicode benchmark spec (which has non-ASCII token classes); one is also lexed from a
+// mapped file. Malformed bytes are checked against their U+FFFD decoding. Then times decode +
+// tokenizeToBuffer against tokenizeUtf8 on every mix, with bytes allocated per run.
+//
+// Run: java -p bin -m MyCustomLanguageCompiler/benchmark.Utf8LexCheck
+public class Utf8LexCheck {
+    private static final String[] EDGE_CASES = { "", " ", "\n\n", "x", "-1", "1.5e+3", "/*", "\"\u00e9\"", "'\u4e00'",
+            "\u00e9", "\u4e00x", "\ud83d\ude00", "a\ud83d\ude00b", "// \ud83d\ude00\nx", "/* \u00e9\u4e00 */y", "\"\ud83d\ude00\"" };
+
+    public static void main(String[] args) throws Exception {
+        List<String> inputs = new ArrayList<>(Arrays.asList(EDGE_CASES));
+        for (String mix : SyntheticCorpus.MIXES)
+            inputs.add(SyntheticCorpus.generate(mix, 1 << 20, 3));
+        Random random = new Random(8);
+        String soup = "ab zA09.-*/\"'\\^\n\t=;(e+_\u00e9\u00ff\u0100\u07ff\u0800\u4e00\uffee\ud83d\ude00\ud800\udc00\udbff\udfff";
+        for (int n = 0; n < 40; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(3000); i > 0; i--) {
+                int at = random.nextInt(soup.length());
+                if (Character.isLowSurrogate(soup.charAt(at))) at--; // keep surrogate pairs whole
+                sb.append(soup.charAt(at));
+                if (Character.isHighSurrogate(soup.charAt(at))) sb.append(soup.charAt(at + 1));
+            }
+            inputs.add(sb.toString());
+        }
+
+        CompiledDFA myLang = CompilerFrontEnd.myLangSpec().compile();
+        TokenSpec unicode = SubsetConstructionBenchmark.unicodeSpec();
+        CompiledDFA[] dfas = { myLang, unicode.compile() };
+        String[] names = { "MyLang", "unicode spec" };
+        for (int d = 0; d < dfas.length; d++) {
+            long start = System.nanoTime();
+            CompiledDFA bytes = dfas[d].utf8();
+            double ms = (System.nanoTime() - start) / 1e6;
+            long tokens = 0;
+            for (String input : inputs)
+                tokens += compare(names[d], dfas[d], input.getBytes(StandardCharsets.UTF_8));
+            System.out.printf("%-13s %d char states x %d classes -> %d byte states x %d classes in %.1f ms; %d inputs, %d tokens identical%n",
+                    names[d], dfas[d].stateCount, dfas[d].classCount, bytes.stateCount, bytes.classCount, ms, inputs.size(), tokens);
+        }
+
+        // Malformed UTF-8: stray continuation, overlong, surrogate, truncated and out-of-range bytes.
+        byte[] malformed = { 'a', ' ', (byte) 0x80, 'b', (byte) 0xC0, (byte) 0xAF, ' ', (byte) 0xED, (byte) 0xA0, (byte) 0x80,
+                ' ', (byte) 0xE4, (byte) 0xB8, ' ', (byte) 0xF5, (byte) 0x80, 'x', '\n', (byte) 0xFF, '1' };
+        ErrorHandler errors = new ErrorHandler();
+        TokenBuffer tokens = new LexicalAnalyzer(myLang, errors, new SymbolTable()).tokenizeUtf8(malformed);
+        for (String error : errors.errors())
+            if (!error.contains("'\ufffd'")) throw new IllegalStateException("Malformed bytes: unexpected error " + error);
+        if (errors.errors().size() != 11 || tokens.size() != 4)
+            throw new IllegalStateException("Malformed bytes: " + tokens.size() + " tokens, " + errors.errors().size() + " errors");
+        System.out.println("Malformed UTF-8: 11 bytes reported as U+FFFD, 4 tokens around them");
+
+        Path file = Files.createTempFile("utf8-lex", ".txt");
+        try {
+            String source = inputs.get(EDGE_CASES.length);
+            Files.writeString(file, source);
+            TokenBuffer mapped = new LexicalAnalyzer(myLang, new ErrorHandler(), new SymbolTable()).tokenizeUtf8(file);
+            TokenBuffer expected = new LexicalAnalyzer(myLang, new ErrorHandler(), new SymbolTable()).tokenizeToBuffer(source);
+            same("mapped file", expected, mapped, source.getBytes(StandardCharsets.UTF_8));
+            System.out.println("Mapped file: " + mapped.size() + " tokens identical");
+        } finally {
+            Files.delete(file);
+        }
+
+        System.out.println();
+        for (String mix : SyntheticCorpus.MIXES) {
+            byte[] utf8 = SyntheticCorpus.generate(mix, 8 << 20, 1).getBytes(StandardCharsets.UTF_8);
+            double[] decoded = measure(() -> lexer(myLang).tokenizeToBuffer(new String(utf8, StandardCharsets.UTF_8)));
+            double[] bytes = measure(() -> lexer(myLang).tokenizeUtf8(utf8));
+            System.out.printf("%-12s decode+tokenizeToBuffer %6.1f MB/s %6.2f B/byte   tokenizeUtf8 %6.1f MB/s %6.2f B/byte%n",
+                    mix, utf8.length / decoded[0] / 1e3, decoded[1] / utf8.length, utf8.length / bytes[0] / 1e3, bytes[1] / utf8.length);
+        }
+    }
+
+    // Lexes source both ways and compares; returns the token count.
+    private static int compare(String name, CompiledDFA dfa, byte[] source) {
+        String text = new String(source, StandardCharsets.UTF_8);
+        ErrorHandler charErrors = new ErrorHandler(), byteErrors = new ErrorHandler();
+        SymbolTable charSymbols = new SymbolTable(), byteSymbols = new SymbolTable();
+        TokenBuffer expected = new LexicalAnalyzer(dfa, charErrors, charSymbols).tokenizeToBuffer(text);
+        TokenBuffer actual = new LexicalAnalyzer(dfa, byteErrors, byteSymbols).tokenizeUtf8(ByteBuffer.wrap(source));
+        same(name, expected, actual, source);
+        if (!charErrors.errors().equals(byteErrors.errors()))
+            throw new IllegalStateException(name + ": errors differ");
+        if (charSymbols.size() != byteSymbols.size())
+            throw new IllegalStateException(name + ": symbol tables differ");
+        return expected.size();
+    }
+
+    private static void same(String name, TokenBuffer expected, TokenBuffer actual, byte[] source) {
+        if (expected.size() != actual.size())
+            throw new IllegalStateException(name + ": token count differs (" + actual.size() + " vs " + expected.size() + ")");
+        CharSequence text = expected.source();
+        int chars = 0, bytes = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            // Advance the char offset to this token, counting the UTF-8 bytes on the way.
+            for (; chars < expected.start(i); chars++)
+                bytes += utf8Length(text, chars);
+            if (expected.kind(i) != actual.kind(i) || expected.line(i) != actual.line(i) || bytes != actual.start(i)
+                    || !expected.lexeme(i).toString().equals(actual.lexeme(i).toString()))
+                throw new IllegalStateException(name + ": token " + i + " differs: " + actual.toToken(i) + " vs " + expected.toToken(i));
+        }
+    }
+
+    private static int utf8Length(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        if (Character.isHighSurrogate(c)) return 4;
+        return Character.isLowSurrogate(c) ? 0 : 3;
+    }
+
+    // Best time in ms of five runs after warm-up, and bytes allocated by one run.
+    private static double[] measure(Runnable op) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 3; i++) op.run();
+        double best = Double.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < 5; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            op.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return new double[] { best, allocated };
+    }
+
+    private static LexicalAnalyzer lexer(CompiledDFA dfa) {
+        return new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+    }
+}
@@ -0,0 +1,6 @@
+package automata;
+
+class CharClassNode extends RegexNode {
+    public char[] ranges; // sorted, disjoint inclusive (lo, hi) pairs
+    public CharClassNode(char[] ranges) { this.ranges = CharRanges.normalize(ranges); }
+}
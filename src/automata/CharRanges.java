@@ -0,0 +1,71 @@
+package automata;
+
+import java.util.*;
+
+// Helpers for character ranges stored as flat char arrays of inclusive (lo, hi) pairs,
+// and for splitting the char space into disjoint intervals at a sorted list of boundaries
+// (interval j is [bounds[j], bounds[j + 1] - 1], the last one runs to Character.MAX_VALUE).
+public final class CharRanges {
+    private CharRanges() { }
+
+    // Sorts and merges overlapping or adjacent (lo, hi) pairs.
+    public static char[] normalize(char[] pairs) {
+        int n = pairs.length / 2;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Character.compare(pairs[2 * a], pairs[2 * b]));
+        char[] out = new char[pairs.length];
+        int m = 0;
+        for (int idx : order) {
+            char lo = pairs[2 * idx], hi = pairs[2 * idx + 1];
+            if (lo > hi) continue;
+            if (m > 0 && lo <= out[m - 1] + 1) {
+                if (hi > out[m - 1]) out[m - 1] = hi;
+            } else {
+                out[m++] = lo;
+                out[m++] = hi;
+            }
+        }
+        return Arrays.copyOf(out, m);
+    }
+
+    // Interval boundaries induced by a set of ranges: 0, every lo and every hi + 1.
+    public static char[] boundaries(char[] los, char[] his, int count) {
+        int[] points = new int[2 * count + 1];
+        int n = 0;
+        points[n++] = 0;
+        for (int i = 0; i < count; i++) {
+            points[n++] = los[i];
+            if (his[i] < Character.MAX_VALUE) points[n++] = his[i] + 1;
+        }
+        Arrays.sort(points, 0, n);
+        char[] bounds = new char[n];
+        int m = 0;
+        for (int i = 0; i < n; i++)
+            if (m == 0 || points[i] != bounds[m - 1]) bounds[m++] = (char) points[i];
+        return Arrays.copyOf(bounds, m);
+    }
+
+    // Index of the interval containing c.
+    public static int intervalOf(char[] bounds, char c) {
+        int i = Arrays.binarySearch(bounds, c);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    public static char intervalEnd(char[] bounds, int interval) {
+        return interval + 1 < bounds.length ? (char) (bounds[interval + 1] - 1) : Character.MAX_VALUE;
+    }
+
+    public static String symbolName(char c) {
+        return (c == NFABuilder.WHITESPACE_MARKER) ? "\\s" :
+               (c == NFABuilder.NEWLINE_MARKER) ? "\\n" :
+               (c == NFABuilder.WILDCARD_MARKER) ? ".(wildcard)" :
+               Character.toString(c);
+    }
+
+    public static String rangeName(char lo, char hi) {
+        if (lo == hi) return symbolName(lo);
+        if (lo == 0 && hi == Character.MAX_VALUE) return ".(any)";
+        return "[" + symbolName(lo) + "-" + symbolName(hi) + "]";
+    }
+}
@@ -0,0 +1,211 @@
+package automata;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import automata.NFABuilder.DFAEdge;
+import automata.NFABuilder.DFAState;
+
+// Flat, table-driven form of a DFA produced by NFABuilder.convertNFAtoDFA.
+// The char space is cut into the disjoint intervals induced by the DFA's edge ranges, and
+// intervals with identical columns in every state share an equivalence class. Transitions
+// live in one dense int[] indexed by state * classCount + class, with -1 meaning "no transition".
+// classMap covers chars below the start of the last interval; everything above it is tailClass.
+// Each state carries the token kind it accepts (-1 if none), resolved by priority when the DFA was built.
+// exitChars is derived from the table: for a state that loops back to itself on every char but a
+// few, it lists those few, so a scanner can search for the next one instead of stepping the table.
+public class CompiledDFA {
+    static final int MAX_EXIT_CHARS = 3;
+
+    public final int stateCount;
+    public final int classCount;
+    public final int startState;
+    public final char[] classMap;     // char -> class for chars < classMap.length
+    public final int tailClass;       // class of every char >= classMap.length
+    public final int[] table;         // stateCount * classCount transitions
+    public final int[] acceptKind;    // per state, -1 for non-accepting
+    public final String[] tokenNames; // kind -> token type name
+    public final char[][] exitChars;  // per state, null unless it only leaves its self-loop on these chars
+    private volatile CompiledDFA utf8; // byte-level form, built on first use
+
+    CompiledDFA(int stateCount, int classCount, char[] classMap, int tailClass, int[] table, int[] acceptKind, String[] tokenNames) {
+        this.stateCount = stateCount;
+        this.classCount = classCount;
+        this.startState = 0;
+        this.classMap = classMap;
+        this.tailClass = tailClass;
+        this.table = table;
+        this.acceptKind = acceptKind;
+        this.tokenNames = tokenNames;
+        this.exitChars = new char[stateCount][];
+        for (int s = 0; s < stateCount; s++)
+            exitChars[s] = findExitChars(s);
+    }
+
+    private char[] findExitChars(int state) {
+        int row = state * classCount;
+        if (table[row + tailClass] != state) return null;
+        char[] exits = new char[MAX_EXIT_CHARS];
+        int count = 0;
+        for (int c = 0; c < classMap.length; c++) {
+            if (table[row + classMap[c]] == state) continue;
+            if (count == MAX_EXIT_CHARS) return null;
+            exits[count++] = (char) c;
+        }
+        return Arrays.copyOf(exits, count);
+    }
+
+    public static CompiledDFA compile(DFAState start, String[] tokenNames) {
+        // Number the reachable states breadth-first so the start state is 0.
+        List<DFAState> order = new ArrayList<>();
+        Map<DFAState, Integer> index = new IdentityHashMap<>();
+        index.put(start, 0);
+        order.add(start);
+        int edgeCount = 0;
+        for (int i = 0; i < order.size(); i++) {
+            for (DFAEdge edge : order.get(i).transitions) {
+                edgeCount++;
+                if (!index.containsKey(edge.target)) {
+                    index.put(edge.target, order.size());
+                    order.add(edge.target);
+                }
+            }
+        }
+        int n = order.size();
+
+        // Column (target per state) of every disjoint interval.
+        char[] los = new char[edgeCount], his = new char[edgeCount];
+        int e = 0;
+        for (DFAState state : order) {
+            for (DFAEdge edge : state.transitions) {
+                los[e] = edge.lo;
+                his[e++] = edge.hi;
+            }
+        }
+        char[] bounds = CharRanges.boundaries(los, his, edgeCount);
+        int[][] intervalColumns = new int[bounds.length][n];
+        for (int[] column : intervalColumns) Arrays.fill(column, -1);
+        for (int s = 0; s < n; s++) {
+            for (DFAEdge edge : order.get(s).transitions) {
+                int last = CharRanges.intervalOf(bounds, edge.hi);
+                for (int j = CharRanges.intervalOf(bounds, edge.lo); j <= last; j++)
+                    intervalColumns[j][s] = index.get(edge.target);
+            }
+        }
+
+        // Group intervals by their column; equal columns share a class.
+        List<int[]> columns = new ArrayList<>();
+        Map<List<Integer>, Integer> classOf = new HashMap<>();
+        int[] intervalClass = new int[bounds.length];
+        for (int j = 0; j < bounds.length; j++) {
+            List<Integer> key = asKey(intervalColumns[j]);
+            Integer cls = classOf.get(key);
+            if (cls == null) {
+                cls = columns.size();
+                classOf.put(key, cls);
+                columns.add(intervalColumns[j]);
+            }
+            intervalClass[j] = cls;
+        }
+        if (columns.size() > Character.MAX_VALUE)
+            throw new RuntimeException("Too many character classes: " + columns.size());
+        int last = bounds.length - 1;
+        char[] classMap = new char[bounds[last]];
+        for (int j = 0; j < last; j++)
+            Arrays.fill(classMap, bounds[j], bounds[j + 1], (char) intervalClass[j]);
+
+        int k = columns.size();
+        int[] table = new int[n * k];
+        int[] acceptKind = new int[n];
+        for (int s = 0; s < n; s++) {
+            for (int cls = 0; cls < k; cls++)
+                table[s * k + cls] = columns.get(cls)[s];
+            acceptKind[s] = order.get(s).acceptKind;
+        }
+        return new CompiledDFA(n, k, classMap, intervalClass[last], table, acceptKind, tokenNames.clone());
+    }
+
+    private static List<Integer> asKey(int[] column) {
+        List<Integer> key = new ArrayList<>(column.length);
+        for (int t : column) key.add(t);
+        return key;
+    }
+
+    // The same automaton over UTF-8 bytes (see Utf8DFA). Built once per DFA on first use; two
+    // threads may both build it, but they get equal tables.
+    public CompiledDFA utf8() {
+        CompiledDFA bytes = utf8;
+        if (bytes == null) utf8 = bytes = Utf8DFA.compile(this);
+        return bytes;
+    }
+
+    public int classOf(char c) {
+        return c < classMap.length ? classMap[c] : tailClass;
+    }
+
+    public int next(int state, char c) {
+        return table[state * classCount + classOf(c)];
+    }
+
+    // Kind accepted after reading all of text from the start state, or -1.
+    public int acceptKindOf(CharSequence text) {
+        int state = startState;
+        for (int i = 0; i < text.length() && state >= 0; i++)
+            state = next(state, text.charAt(i));
+        return state >= 0 ? acceptKind[state] : -1;
+    }
+
+    public int kindOf(String tokenName) {
+        for (int i = 0; i < tokenNames.length; i++)
+            if (tokenNames[i].equals(tokenName)) return i;
+        return -1;
+    }
+
+    // Binary form: counts, token names (length-prefixed UTF-8), class map, tail class, table, accept kinds.
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(stateCount);
+        out.writeInt(classCount);
+        out.writeInt(startState);
+        out.writeInt(tokenNames.length);
+        for (String name : tokenNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(classMap.length);
+        for (char c : classMap) out.writeChar(c);
+        out.writeInt(tailClass);
+        for (int t : table) out.writeInt(t);
+        for (int k : acceptKind) out.writeInt(k);
+    }
+
+    // Reads the form written by writeTo; the buffer may be a read-only mapping of the file.
+    public static CompiledDFA readFrom(ByteBuffer in) {
+        int stateCount = in.getInt();
+        int classCount = in.getInt();
+        int startState = in.getInt();
+        if (stateCount <= 0 || classCount <= 0 || startState != 0)
+            throw new IllegalStateException("Corrupt DFA table header");
+        String[] tokenNames = new String[in.getInt()];
+        for (int i = 0; i < tokenNames.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            tokenNames[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        char[] classMap = new char[in.getInt()];
+        in.asCharBuffer().get(classMap);
+        in.position(in.position() + classMap.length * 2);
+        int tailClass = in.getInt();
+        if (tailClass < 0 || tailClass >= classCount)
+            throw new IllegalStateException("Corrupt DFA table class map");
+        int[] table = new int[Math.multiplyExact(stateCount, classCount)];
+        in.asIntBuffer().get(table);
+        in.position(in.position() + table.length * 4);
+        int[] acceptKind = new int[stateCount];
+        in.asIntBuffer().get(acceptKind);
+        in.position(in.position() + acceptKind.length * 4);
+        return new CompiledDFA(stateCount, classCount, classMap, tailClass, table, acceptKind, tokenNames);
+    }
+}
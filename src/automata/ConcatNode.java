@@ -0,0 +1,8 @@
+package automata;
+
+class ConcatNode extends RegexNode {
+    public RegexNode left, right;
+    public ConcatNode(RegexNode left, RegexNode right) {
+        this.left = left; this.right = right;
+    }
+}
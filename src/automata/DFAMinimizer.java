@@ -0,0 +1,174 @@
+package automata;
+
+import java.util.*;
+import automata.NFABuilder.DFAEdge;
+import automata.NFABuilder.DFAState;
+
+// Hopcroft partition refinement over the subset-construction DFA.
+// Accepting states start in one block per accepted token kind, so states that
+// accept different tokens are never merged. Missing transitions go to an implicit dead
+// state; states that end up equivalent to it are dropped from the result. The symbols are the
+// disjoint char intervals induced by all edge ranges of the DFA.
+public class DFAMinimizer {
+
+    public static DFAState minimize(DFAState start) {
+        // Number reachable states; index n is the implicit dead state.
+        List<DFAState> order = new ArrayList<>();
+        Map<DFAState, Integer> index = new IdentityHashMap<>();
+        index.put(start, 0);
+        order.add(start);
+        int edgeCount = 0;
+        for (int i = 0; i < order.size(); i++) {
+            for (DFAEdge edge : order.get(i).transitions) {
+                edgeCount++;
+                if (!index.containsKey(edge.target)) {
+                    index.put(edge.target, order.size());
+                    order.add(edge.target);
+                }
+            }
+        }
+        int n = order.size();
+        int dead = n;
+        int total = n + 1;
+        char[] los = new char[edgeCount], his = new char[edgeCount];
+        int e = 0;
+        for (DFAState state : order) {
+            for (DFAEdge edge : state.transitions) {
+                los[e] = edge.lo;
+                his[e++] = edge.hi;
+            }
+        }
+        char[] symbols = CharRanges.boundaries(los, his, edgeCount); // interval c starts at symbols[c]
+
+        // Inverse transitions per symbol in CSR form: sources of t on symbol c are
+        // invSources[invStart[c * (total + 1) + t] .. invStart[c * (total + 1) + t + 1]).
+        int[] delta = new int[symbols.length * total];
+        Arrays.fill(delta, dead);
+        for (int s = 0; s < n; s++) {
+            for (DFAEdge edge : order.get(s).transitions) {
+                int target = index.get(edge.target);
+                int last = CharRanges.intervalOf(symbols, edge.hi);
+                for (int c = CharRanges.intervalOf(symbols, edge.lo); c <= last; c++)
+                    delta[c * total + s] = target;
+            }
+        }
+        int[] invStart = new int[symbols.length * (total + 1) + 1];
+        for (int c = 0; c < symbols.length; c++)
+            for (int s = 0; s < total; s++)
+                invStart[c * (total + 1) + delta[c * total + s] + 1]++;
+        for (int i = 1; i < invStart.length; i++) invStart[i] += invStart[i - 1];
+        int[] fill = Arrays.copyOf(invStart, invStart.length);
+        int[] invSources = new int[symbols.length * total];
+        for (int c = 0; c < symbols.length; c++)
+            for (int s = 0; s < total; s++)
+                invSources[fill[c * (total + 1) + delta[c * total + s]]++] = s;
+
+        // Initial partition: non-accepting (with the dead state) plus one block per accepted token kind.
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        groups.put(Integer.MIN_VALUE, new ArrayList<>());
+        for (int s = 0; s < n; s++) {
+            DFAState state = order.get(s);
+            int key = state.isAccept ? state.acceptKind : Integer.MIN_VALUE;
+            groups.computeIfAbsent(key, g -> new ArrayList<>()).add(s);
+        }
+        groups.get(Integer.MIN_VALUE).add(dead);
+
+        int[] elems = new int[total];
+        int[] loc = new int[total];
+        int[] blockOf = new int[total];
+        int[] blockStart = new int[total + 1];
+        int[] blockEnd = new int[total + 1];
+        int[] marked = new int[total + 1];
+        boolean[] inWorklist = new boolean[total + 1];
+        Deque<Integer> worklist = new ArrayDeque<>();
+        int blocks = 0, p = 0;
+        for (List<Integer> group : groups.values()) {
+            if (group.isEmpty()) continue;
+            blockStart[blocks] = p;
+            for (int s : group) {
+                elems[p] = s;
+                loc[s] = p++;
+                blockOf[s] = blocks;
+            }
+            blockEnd[blocks] = p;
+            inWorklist[blocks] = true;
+            worklist.add(blocks++);
+        }
+
+        List<Integer> touched = new ArrayList<>();
+        while (!worklist.isEmpty()) {
+            int splitter = worklist.poll();
+            inWorklist[splitter] = false;
+            int[] members = Arrays.copyOfRange(elems, blockStart[splitter], blockEnd[splitter]);
+            for (int c = 0; c < symbols.length; c++) {
+                // Move every predecessor into the marked prefix of its block.
+                for (int t : members) {
+                    int base = c * (total + 1) + t;
+                    for (int j = invStart[base]; j < invStart[base + 1]; j++) {
+                        int s = invSources[j];
+                        int b = blockOf[s];
+                        int m = blockStart[b] + marked[b];
+                        if (loc[s] < m) continue;
+                        if (marked[b] == 0) touched.add(b);
+                        int other = elems[m];
+                        elems[m] = s;
+                        elems[loc[s]] = other;
+                        loc[other] = loc[s];
+                        loc[s] = m;
+                        marked[b]++;
+                    }
+                }
+                for (int b : touched) {
+                    int size = blockEnd[b] - blockStart[b];
+                    if (marked[b] < size) {
+                        int nb = blocks++;
+                        blockStart[nb] = blockStart[b];
+                        blockEnd[nb] = blockStart[b] + marked[b];
+                        blockStart[b] = blockEnd[nb];
+                        for (int i = blockStart[nb]; i < blockEnd[nb]; i++)
+                            blockOf[elems[i]] = nb;
+                        if (inWorklist[b] || marked[b] <= size - marked[b]) {
+                            inWorklist[nb] = true;
+                            worklist.add(nb);
+                        } else {
+                            inWorklist[b] = true;
+                            worklist.add(b);
+                        }
+                    }
+                    marked[b] = 0;
+                }
+                touched.clear();
+            }
+        }
+
+        // Rebuild the DFA over blocks, numbering breadth-first from the start block.
+        int deadBlock = blockOf[dead];
+        DFAState[] byBlock = new DFAState[blocks];
+        List<Integer> queue = new ArrayList<>();
+        queue.add(blockOf[0]);
+        byBlock[blockOf[0]] = new DFAState(order.get(0).nfaStates, 0, order.get(0).acceptKind);
+        for (int q = 0; q < queue.size(); q++) {
+            int b = queue.get(q);
+            if (b == deadBlock) continue;
+            int rep = elems[blockStart[b]];
+            List<DFAEdge> edges = byBlock[b].transitions;
+            int previous = -1;
+            for (int c = 0; c < symbols.length; c++) {
+                int tb = blockOf[delta[c * total + rep]];
+                if (tb == deadBlock) { previous = -1; continue; }
+                if (byBlock[tb] == null) {
+                    DFAState first = order.get(elems[blockStart[tb]]);
+                    byBlock[tb] = new DFAState(first.nfaStates, queue.size(), first.acceptKind);
+                    queue.add(tb);
+                }
+                char hi = CharRanges.intervalEnd(symbols, c);
+                if (previous == tb)
+                    edges.set(edges.size() - 1, new DFAEdge(edges.get(edges.size() - 1).lo, hi, byBlock[tb]));
+                else
+                    edges.add(new DFAEdge(symbols[c], hi, byBlock[tb]));
+                previous = tb;
+            }
+        }
+        return byBlock[blockOf[0]];
+    }
+}
@@ -0,0 +1,79 @@
+package automata;
+
+import java.io.PrintWriter;
+import java.util.*;
+import automata.NFABuilder.DFAEdge;
+import automata.NFABuilder.DFAState;
+import automata.NFABuilder.NFA;
+
+// Graphviz (DOT) export of the automata, e.g. dot -Tsvg nfa.dot -o nfa.svg.
+// Accepting states are drawn as double circles labelled with their token name; tokenNames may
+// be null, in which case the token kind number is used instead.
+public class DotExport {
+    public static void write(NFA nfa, String[] tokenNames, PrintWriter out) {
+        out.println("digraph NFA {");
+        out.println("  rankdir=LR;");
+        out.println("  node [shape=circle];");
+        out.print("  start [shape=point];\n  start -> n"); out.print(nfa.start); out.println(";");
+        for (int s : nfa.reachable()) {
+            if (nfa.acceptKind[s] >= 0)
+                writeAcceptNode("n" + s, String.valueOf(s), nfa.acceptKind[s], tokenNames, out);
+            for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++)
+                writeEdge("n" + s, "n" + nfa.edgeTarget[e], CharRanges.rangeName(nfa.edgeLo[e], nfa.edgeHi[e]), out);
+            for (int e = nfa.epsilonStart[s]; e < nfa.epsilonStart[s + 1]; e++)
+                writeEdge("n" + s, "n" + nfa.epsilonTarget[e], "ε", out);
+        }
+        out.println("}");
+    }
+
+    // States are numbered breadth-first from start (as in CompiledDFA), so the start state is d0.
+    public static void write(DFAState start, String[] tokenNames, PrintWriter out) {
+        List<DFAState> order = new ArrayList<>();
+        Map<DFAState, Integer> index = new IdentityHashMap<>();
+        index.put(start, 0);
+        order.add(start);
+        out.println("digraph DFA {");
+        out.println("  rankdir=LR;");
+        out.println("  node [shape=circle];");
+        out.println("  start [shape=point];\n  start -> d0;");
+        for (int i = 0; i < order.size(); i++) {
+            DFAState state = order.get(i);
+            if (state.isAccept)
+                writeAcceptNode("d" + i, String.valueOf(i), state.acceptKind, tokenNames, out);
+            for (DFAEdge edge : state.transitions) {
+                Integer target = index.get(edge.target);
+                if (target == null) {
+                    target = order.size();
+                    index.put(edge.target, target);
+                    order.add(edge.target);
+                }
+                writeEdge("d" + i, "d" + target, CharRanges.rangeName(edge.lo, edge.hi), out);
+            }
+        }
+        out.println("}");
+    }
+
+    private static void writeAcceptNode(String node, String label, int kind, String[] tokenNames, PrintWriter out) {
+        String name = tokenNames != null && kind < tokenNames.length ? tokenNames[kind] : String.valueOf(kind);
+        out.print("  "); out.print(node);
+        out.print(" [shape=doublecircle, label=\""); out.print(label); out.print("\\n"); out.print(escape(name));
+        out.println("\"];");
+    }
+
+    private static void writeEdge(String from, String to, String label, PrintWriter out) {
+        out.print("  "); out.print(from); out.print(" -> "); out.print(to);
+        out.print(" [label=\""); out.print(escape(label)); out.println("\"];");
+    }
+
+    // Quotes and backslashes are escaped; control chars are written as \\uXXXX.
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 4);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20 || c == 0x7f) sb.append(String.format("\\\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+}
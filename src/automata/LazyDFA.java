@@ -0,0 +1,308 @@
+package automata;
+
+import java.io.DataOutputStream;
+import java.util.*;
+
+// DFA built on demand from an NFA, in the style of RE2's lazy DFA: no subset construction up
+// front, a state (an ε-closed NFA state set) is materialized the first time a scan reaches it
+// and a transition is computed the first time it is taken. The inherited table and acceptKind
+// arrays are the cache: maxStates rows allocated once, with UNKNOWN for transitions not computed
+// yet, so DFAScanner steps cached transitions exactly like a compiled table and only calls
+// transition() on UNKNOWN. The alphabet is split into classes from the NFA's edge ranges alone.
+//
+// When the cache is full it is flushed (every state and transition is dropped and the scan
+// carries on from the current state, renumbered), so memory stays bounded whatever the spec.
+// A flush that comes after fewer than THRASH_CHARS chars per cached state counts as thrashing;
+// after MAX_THRASH_FLUSHES in a row the DFA stops caching and simulates the NFA instead, one
+// closure(move(S, c)) per char in three scratch slots, for SIMULATE_CHARS_PER_STATE x maxStates
+// chars before it tries caching again. Tokens are the same as with the compiled DFA.
+//
+// Not thread-safe: scans mutate the cache, so use one LazyDFA per thread (LexicalAnalyzer lexes
+// sequentially when asked to lex one in parallel). Counters: hits and misses are transition
+// lookups served by the cache or computed from the NFA, statesBuilt counts materializations
+// (a state rebuilt after a flush counts again). The scanner reads the table itself and reports
+// its hits once per token (a char passed in a cached self-loop is one hit); lookups through
+// transition() and next(), such as LexicalAnalyzer's keyword probes, count where they happen.
+public class LazyDFA extends CompiledDFA {
+    public static final int UNKNOWN = -2;
+    public static final int DEFAULT_MAX_STATES = 1024;
+    static final int THRASH_CHARS = 10;
+    static final int MAX_THRASH_FLUSHES = 3;
+    static final int SIMULATE_CHARS_PER_STATE = 64;
+
+    private final NFABuilder.NFA nfa;
+    private final int words;           // longs per NFA state set
+    private final char[] classChar;    // a representative char per class
+    private final long[][] sets;       // per cached state, its NFA state set
+    private final Map<StateSet, Integer> ids = new HashMap<>();
+    private int count;                 // cached states
+    private final int[] stack;
+
+    private boolean simulating;
+    private int thrashFlushes;
+    private long scannedAtFlush, simulateLeft;
+
+    private long scanned, hits, misses, statesBuilt, flushes, simulatedSteps;
+
+    private LazyDFA(NFABuilder.NFA nfa, String[] tokenNames, int maxStates, char[] classMap, int tailClass, char[] classChar) {
+        super(maxStates, classChar.length, classMap, tailClass, unknownTable(maxStates, classChar.length), filled(maxStates, -1), tokenNames.clone());
+        this.nfa = nfa;
+        this.words = (nfa.stateCount + 63) >>> 6;
+        this.classChar = classChar;
+        this.sets = new long[maxStates][];
+        this.stack = new int[nfa.stateCount];
+        materialize(closure(nfa.start));
+    }
+
+    // maxStates is the cache size in states (at least 4; each costs a table row and an NFA set).
+    public static LazyDFA of(NFABuilder.NFA nfa, String[] tokenNames, int maxStates) {
+        if (maxStates < 4) throw new IllegalArgumentException("A lazy DFA needs room for at least 4 states");
+        // Classes: the disjoint intervals of every edge range, merged when the same edges cover them.
+        int edges = nfa.edgeTarget.length;
+        char[] bounds = CharRanges.boundaries(nfa.edgeLo, nfa.edgeHi, edges);
+        int[] intervalClass = new int[bounds.length];
+        int classes = 1;
+        int[] split = new int[16], splitBy = new int[16];
+        Arrays.fill(splitBy, -1);
+        for (int e = 0; e < edges; e++) {
+            int last = CharRanges.intervalOf(bounds, nfa.edgeHi[e]);
+            for (int j = CharRanges.intervalOf(bounds, nfa.edgeLo[e]); j <= last; j++) {
+                int old = intervalClass[j];
+                if (splitBy[old] != e) {
+                    splitBy[old] = e;
+                    split[old] = classes++;
+                    if (classes > split.length) {
+                        split = Arrays.copyOf(split, classes * 2);
+                        splitBy = Arrays.copyOf(splitBy, classes * 2);
+                        Arrays.fill(splitBy, classes, splitBy.length, -1);
+                    }
+                }
+                intervalClass[j] = split[old];
+            }
+        }
+        // Renumber densely in order of first appearance.
+        int[] dense = new int[classes];
+        Arrays.fill(dense, -1);
+        char[] classChar = new char[classes];
+        int k = 0;
+        for (int j = 0; j < bounds.length; j++) {
+            int cls = intervalClass[j];
+            if (dense[cls] < 0) {
+                dense[cls] = k;
+                classChar[k++] = bounds[j];
+            }
+            intervalClass[j] = dense[cls];
+        }
+        if (k > Character.MAX_VALUE)
+            throw new RuntimeException("Too many character classes: " + k);
+        int last = bounds.length - 1;
+        char[] classMap = new char[bounds[last]];
+        for (int j = 0; j < last; j++)
+            Arrays.fill(classMap, bounds[j], bounds[j + 1], (char) intervalClass[j]);
+        return new LazyDFA(nfa, tokenNames, maxStates, classMap, intervalClass[last], Arrays.copyOf(classChar, k));
+    }
+
+    private static int[] unknownTable(int maxStates, int classCount) {
+        return filled(Math.multiplyExact(maxStates, classCount), UNKNOWN);
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] a = new int[length];
+        Arrays.fill(a, value);
+        return a;
+    }
+
+    // Target of state on c, computing (and caching) it if the table holds UNKNOWN; -1 if none.
+    // May flush the cache, so state ids held from before the call are stale afterwards.
+    public int transition(int state, char c) {
+        int cls = classOf(c);
+        int cached = table[state * classCount + cls];
+        if (cached != UNKNOWN) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        long[] from = sets[state];
+        long[] target = move(from, classChar[cls]);
+        if (simulating && simulateLeft <= 0) {
+            simulating = false;
+            thrashFlushes = MAX_THRASH_FLUSHES - 1; // one more thrashing flush goes straight back
+            flush();
+            state = idOf(from);
+        }
+        if (simulating) return simulate(state, target);
+        int next = -1;
+        if (target != null) {
+            Integer id = ids.get(new StateSet(target));
+            if (id == null && count == sets.length) {
+                flushFull();
+                if (simulating) {
+                    store(1, from);
+                    return simulate(1, target);
+                }
+                state = idOf(from);
+                id = ids.get(new StateSet(target));
+            }
+            next = id != null ? id : materialize(target);
+        }
+        table[state * classCount + cls] = next;
+        return next;
+    }
+
+    // One NFA simulation step: the target goes to whichever of slots 1 and 2 is not being read;
+    // nothing is cached, so every step comes back here.
+    private int simulate(int state, long[] target) {
+        simulatedSteps++;
+        simulateLeft--;
+        if (target == null) return -1;
+        int slot = state == 1 ? 2 : 1;
+        store(slot, target);
+        return slot;
+    }
+
+    @Override
+    public int next(int state, char c) {
+        return transition(state, c);
+    }
+
+    // The scanner reports how many chars each scan stepped through, and how many of its steps
+    // the table already held (the others came through transition() as misses).
+    public void scanned(long chars, long cachedSteps) {
+        scanned += chars;
+        hits += cachedSteps;
+    }
+
+    // Full cache: flush, and switch to NFA simulation if the cache keeps filling up quickly.
+    private void flushFull() {
+        long sinceFlush = scanned - scannedAtFlush;
+        thrashFlushes = sinceFlush < (long) THRASH_CHARS * sets.length ? thrashFlushes + 1 : 0;
+        flush();
+        if (thrashFlushes >= MAX_THRASH_FLUSHES) {
+            simulating = true;
+            simulateLeft = (long) SIMULATE_CHARS_PER_STATE * sets.length;
+        }
+    }
+
+    private void flush() {
+        flushes++;
+        scannedAtFlush = scanned;
+        Arrays.fill(table, UNKNOWN);
+        Arrays.fill(acceptKind, -1);
+        Arrays.fill(sets, null);
+        ids.clear();
+        count = 0;
+        materialize(closure(nfa.start));
+    }
+
+    private int idOf(long[] set) {
+        Integer id = ids.get(new StateSet(set));
+        return id != null ? id : materialize(set);
+    }
+
+    private int materialize(long[] set) {
+        int id = count++;
+        store(id, set);
+        ids.put(new StateSet(set), id);
+        return id;
+    }
+
+    // Puts set in a slot; its row must already be UNKNOWN (fresh, flushed, or never cached).
+    private void store(int slot, long[] set) {
+        statesBuilt++;
+        sets[slot] = set;
+        acceptKind[slot] = acceptKindOf(set);
+    }
+
+    // closure(move(from, c)), or null if it is empty.
+    private long[] move(long[] from, char c) {
+        long[] to = null;
+        int sp = 0;
+        for (int w = 0; w < words; w++) {
+            for (long word = from[w]; word != 0; word &= word - 1) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(word);
+                for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++) {
+                    int t = nfa.edgeTarget[e];
+                    if (c < nfa.edgeLo[e] || c > nfa.edgeHi[e]) continue;
+                    if (to == null) to = new long[words];
+                    if ((to[t >>> 6] & (1L << t)) != 0) continue;
+                    to[t >>> 6] |= 1L << t;
+                    stack[sp++] = t;
+                }
+            }
+        }
+        if (to != null) closeOver(to, sp);
+        return to;
+    }
+
+    private long[] closure(int state) {
+        long[] set = new long[words];
+        set[state >>> 6] |= 1L << state;
+        stack[0] = state;
+        closeOver(set, 1);
+        return set;
+    }
+
+    // Adds the ε-closure of the sp states on the stack (already in set) to set.
+    private void closeOver(long[] set, int sp) {
+        while (sp > 0) {
+            int s = stack[--sp];
+            for (int e = nfa.epsilonStart[s]; e < nfa.epsilonStart[s + 1]; e++) {
+                int t = nfa.epsilonTarget[e];
+                if ((set[t >>> 6] & (1L << t)) == 0) {
+                    set[t >>> 6] |= 1L << t;
+                    stack[sp++] = t;
+                }
+            }
+        }
+    }
+
+    // Highest priority, then lowest kind, as in NFABuilder.convertNFAtoDFA.
+    private int acceptKindOf(long[] set) {
+        int acceptKind = -1, bestPriority = Integer.MIN_VALUE;
+        for (int w = 0; w < words; w++) {
+            for (long word = set[w]; word != 0; word &= word - 1) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(word);
+                int kind = nfa.acceptKind[s];
+                if (kind < 0) continue;
+                if (nfa.priority[s] > bestPriority || (nfa.priority[s] == bestPriority && kind < acceptKind)) {
+                    bestPriority = nfa.priority[s];
+                    acceptKind = kind;
+                }
+            }
+        }
+        return acceptKind;
+    }
+
+    // The table is never complete, so it cannot be cached on disk.
+    @Override
+    public void writeTo(DataOutputStream out) {
+        throw new IllegalStateException("A lazy DFA has no complete table to store");
+    }
+
+    public long hits() { return hits; }
+    public long misses() { return misses; }
+    public long statesBuilt() { return statesBuilt; }
+    public long flushes() { return flushes; }
+    public long simulatedSteps() { return simulatedSteps; }
+    public boolean simulating() { return simulating; }
+    public int cachedStates() { return count; }
+
+    public String stats() {
+        return String.format("%d hits, %d misses, %d states built, %d cached (max %d), %d flushes, %d simulated steps%s",
+                hits, misses, statesBuilt, count, sets.length, flushes, simulatedSteps, simulating ? " (simulating the NFA)" : "");
+    }
+
+    // NFA state set, hashable by content with the hash computed once.
+    private static final class StateSet {
+        final long[] bits;
+        final int hash;
+        StateSet(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) {
+            return o instanceof StateSet && ((StateSet) o).hash == hash && Arrays.equals(((StateSet) o).bits, bits);
+        }
+    }
+}
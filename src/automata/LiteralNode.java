@@ -0,0 +1,6 @@
+package automata;
+
+class LiteralNode extends RegexNode {
+    public char c;
+    public LiteralNode(char c) { this.c = c; }
+}
@@ -1,10 +1,38 @@
 package automata;
 
+import java.io.PrintWriter;
 import java.util.*;
 
+// An NFABuilder is an arena for NFA states: a state is just an int id, numbered 0, 1, 2, ... in
+// creation order, and edges are appended to primitive arrays as Thompson's construction adds
+// them. build() packs the edges into an immutable CSR NFA that closure and subset construction
+// run on. Ids depend only on what was built with this builder; use one builder per lexer
+// construction (separate builders can be used concurrently on different threads).
 public class NFABuilder {
-
-    public static int stateIdCounter = 0;
+    
+    // Per-state data, indexed by state id.
+    private int stateCount;
+    private int[] acceptKind = new int[64];  // token kind accepted in this state, -1 if none
+    private int[] priority = new int[64];
+    
+    // Labelled edges (from --[lo, hi]--> to) and ε-edges (from --> to), in insertion order.
+    private int edgeCount;
+    private int[] edgeFrom = new int[64], edgeTo = new int[64];
+    private char[] edgeLo = new char[64], edgeHi = new char[64];
+    private int epsilonCount;
+    private int[] epsilonFrom = new int[64], epsilonTo = new int[64];
+    
+    public int newState() {
+        if (stateCount == acceptKind.length) {
+            acceptKind = Arrays.copyOf(acceptKind, stateCount * 2);
+            priority = Arrays.copyOf(priority, stateCount * 2);
+        }
+        acceptKind[stateCount] = -1;
+        priority[stateCount] = 0;
+        return stateCount++;
+    }
+    
+    public int stateCount() { return stateCount; }
     
     // Define our special markers.
     public static final char WHITESPACE_MARKER = '\u0001';
@@ -12,299 +40,450 @@ public class NFABuilder {
     public static final char WILDCARD_MARKER = '\u0003';
     public static final char CONCAT_OP = '#'; // (Used internally in our engine)
     
-    // --- NFA state and fragment classes ---
-    public static class State {
-        public int id;
-        public Map<Character, List<State>> transitions = new HashMap<>();
-        public List<State> epsilonTransitions = new ArrayList<>();
-        public boolean isAccept = false;
-        public String tokenType = null;
-        
-        public State() { id = stateIdCounter++; }
-        
-        public void addTransition(char symbol, State target) {
-            transitions.computeIfAbsent(symbol, k -> new ArrayList<>()).add(target);
+    public void addTransition(int from, char symbol, int to) {
+        if (symbol == WILDCARD_MARKER) addRange(from, Character.MIN_VALUE, Character.MAX_VALUE, to);
+        else addRange(from, symbol, symbol, to);
+    }
+    
+    public void addRange(int from, char lo, char hi, int to) {
+        if (edgeCount == edgeFrom.length) {
+            edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+            edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            edgeLo = Arrays.copyOf(edgeLo, edgeCount * 2);
+            edgeHi = Arrays.copyOf(edgeHi, edgeCount * 2);
         }
-        
-        public void addEpsilon(State target) {
-            epsilonTransitions.add(target);
+        edgeFrom[edgeCount] = from;
+        edgeLo[edgeCount] = lo;
+        edgeHi[edgeCount] = hi;
+        edgeTo[edgeCount++] = to;
+    }
+    
+    public void addEpsilon(int from, int to) {
+        if (epsilonCount == epsilonFrom.length) {
+            epsilonFrom = Arrays.copyOf(epsilonFrom, epsilonCount * 2);
+            epsilonTo = Arrays.copyOf(epsilonTo, epsilonCount * 2);
         }
+        epsilonFrom[epsilonCount] = from;
+        epsilonTo[epsilonCount++] = to;
     }
     
-    public static class NFA {
-        public State start;
-        public State accept; // May be null for a master NFA.
-        public NFA(State start, State accept) {
+    public void setAccept(int state, int kind, int statePriority) {
+        acceptKind[state] = kind;
+        priority[state] = statePriority;
+    }
+    
+    // --- NFA fragment and packed NFA ---
+    // Entry and exit state of a Thompson fragment under construction.
+    public static class Fragment {
+        public final int start, accept;
+        public Fragment(int start, int accept) {
             this.start = start;
             this.accept = accept;
         }
     }
     
+    // Immutable NFA over every state of its builder, rooted at start. The labelled edges of
+    // state s are [edgeStart[s], edgeStart[s + 1]) in edgeLo/edgeHi/edgeTarget and its ε-edges
+    // are [epsilonStart[s], epsilonStart[s + 1]) in epsilonTarget, both in insertion order.
+    public static class NFA {
+        public final int start, stateCount;
+        public final int[] acceptKind, priority;
+        public final int[] edgeStart, edgeTarget;
+        public final char[] edgeLo, edgeHi;
+        public final int[] epsilonStart, epsilonTarget;
+        
+        NFA(int start, int stateCount, int[] acceptKind, int[] priority, int[] edgeStart, int[] edgeTarget,
+            char[] edgeLo, char[] edgeHi, int[] epsilonStart, int[] epsilonTarget) {
+            this.start = start;
+            this.stateCount = stateCount;
+            this.acceptKind = acceptKind;
+            this.priority = priority;
+            this.edgeStart = edgeStart;
+            this.edgeTarget = edgeTarget;
+            this.edgeLo = edgeLo;
+            this.edgeHi = edgeHi;
+            this.epsilonStart = epsilonStart;
+            this.epsilonTarget = epsilonTarget;
+        }
+        
+        // States reachable from start in depth-first pre-order (labelled edges before ε-edges),
+        // walked with an explicit stack so deep NFAs cannot overflow the call stack.
+        public int[] reachable() {
+            int[] order = new int[stateCount], stack = new int[stateCount], cursor = new int[stateCount];
+            boolean[] seen = new boolean[stateCount];
+            int count = 0, sp = 0;
+            seen[start] = true;
+            order[count++] = start;
+            stack[sp++] = start;
+            while (sp > 0) {
+                int s = stack[sp - 1], c = cursor[sp - 1]++;
+                int labelled = edgeStart[s + 1] - edgeStart[s];
+                int t;
+                if (c < labelled) t = edgeTarget[edgeStart[s] + c];
+                else if (c - labelled < epsilonStart[s + 1] - epsilonStart[s]) t = epsilonTarget[epsilonStart[s] + c - labelled];
+                else { sp--; continue; }
+                if (seen[t]) continue;
+                seen[t] = true;
+                order[count++] = t;
+                stack[sp] = t;
+                cursor[sp++] = 0;
+            }
+            return Arrays.copyOf(order, count);
+        }
+    }
+    
+    // Packs the edges added so far into CSR arrays (a stable counting sort on the source state).
+    // The builder stays usable, so this can also snapshot a single token's NFA for display.
+    public NFA build(int start) {
+        int[] edgeStart = new int[stateCount + 1], edgeTarget = new int[edgeCount];
+        char[] los = new char[edgeCount], his = new char[edgeCount];
+        for (int e = 0; e < edgeCount; e++) edgeStart[edgeFrom[e] + 1]++;
+        for (int s = 0; s < stateCount; s++) edgeStart[s + 1] += edgeStart[s];
+        int[] fill = Arrays.copyOf(edgeStart, stateCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int at = fill[edgeFrom[e]]++;
+            los[at] = edgeLo[e];
+            his[at] = edgeHi[e];
+            edgeTarget[at] = edgeTo[e];
+        }
+        int[] epsilonStart = new int[stateCount + 1], epsilonTarget = new int[epsilonCount];
+        for (int e = 0; e < epsilonCount; e++) epsilonStart[epsilonFrom[e] + 1]++;
+        for (int s = 0; s < stateCount; s++) epsilonStart[s + 1] += epsilonStart[s];
+        fill = Arrays.copyOf(epsilonStart, stateCount);
+        for (int e = 0; e < epsilonCount; e++)
+            epsilonTarget[fill[epsilonFrom[e]]++] = epsilonTo[e];
+        return new NFA(start, stateCount, Arrays.copyOf(acceptKind, stateCount), Arrays.copyOf(priority, stateCount),
+                edgeStart, edgeTarget, los, his, epsilonStart, epsilonTarget);
+    }
+    
     // --- Extended Regex-to-NFA conversion ---
     // This uses the RegexParser (above) to produce an AST and then builds an NFA via Thompson’s construction.
     public static class RegexToNFA {
-        public static NFA convert(String regex) {
+        public static Fragment convert(NFABuilder builder, String regex) {
+            return convert(builder, regex, true);
+        }
+        
+        // optimize runs the parsed regex through RegexOptimizer first; without it the NFA is the
+        // plain Thompson construction of the regex as written.
+        public static Fragment convert(NFABuilder builder, String regex, boolean optimize) {
             RegexParser parser = new RegexParser(regex);
             RegexNode ast = parser.parse();
-            return regexNodeToNFA(ast);
+            if (optimize) ast = new RegexOptimizer().optimize(ast);
+            return regexNodeToNFA(builder, ast);
         }
         
-        private static NFA regexNodeToNFA(RegexNode node) {
+        private static Fragment regexNodeToNFA(NFABuilder builder, RegexNode node) {
             if (node instanceof LiteralNode) {
                 LiteralNode lit = (LiteralNode) node;
-                State start = new State();
-                State accept = new State();
-                start.addTransition(lit.c, accept);
-                return new NFA(start, accept);
+                int start = builder.newState();
+                int accept = builder.newState();
+                builder.addTransition(start, lit.c, accept);
+                return new Fragment(start, accept);
             } else if (node instanceof CharClassNode) {
                 CharClassNode cc = (CharClassNode) node;
-                State start = new State();
-                State accept = new State();
-                for (char c : cc.chars) {
-                    start.addTransition(c, accept);
+                int start = builder.newState();
+                int accept = builder.newState();
+                for (int i = 0; i < cc.ranges.length; i += 2) {
+                    builder.addRange(start, cc.ranges[i], cc.ranges[i + 1], accept);
                 }
-                return new NFA(start, accept);
-            } else if (node instanceof ConcatNode) {
-                ConcatNode con = (ConcatNode) node;
-                NFA left = regexNodeToNFA(con.left);
-                NFA right = regexNodeToNFA(con.right);
-                left.accept.addEpsilon(right.start);
-                return new NFA(left.start, right.accept);
-            } else if (node instanceof UnionNode) {
-                UnionNode un = (UnionNode) node;
-                NFA left = regexNodeToNFA(un.left);
-                NFA right = regexNodeToNFA(un.right);
-                State start = new State();
-                State accept = new State();
-                start.addEpsilon(left.start);
-                start.addEpsilon(right.start);
-                left.accept.addEpsilon(accept);
-                right.accept.addEpsilon(accept);
-                return new NFA(start, accept);
+                return new Fragment(start, accept);
+            } else if (node instanceof ConcatNode || node instanceof UnionNode) {
+                return chainToNFA(builder, node);
             } else if (node instanceof StarNode) {
                 StarNode star = (StarNode) node;
-                NFA inner = regexNodeToNFA(star.node);
-                State start = new State();
-                State accept = new State();
-                start.addEpsilon(inner.start);
-                start.addEpsilon(accept);
-                inner.accept.addEpsilon(inner.start);
-                inner.accept.addEpsilon(accept);
-                return new NFA(start, accept);
+                Fragment inner = regexNodeToNFA(builder, star.node);
+                int start = builder.newState();
+                int accept = builder.newState();
+                builder.addEpsilon(start, inner.start);
+                builder.addEpsilon(start, accept);
+                builder.addEpsilon(inner.accept, inner.start);
+                builder.addEpsilon(inner.accept, accept);
+                return new Fragment(start, accept);
             } else if (node instanceof PlusNode) {
                 PlusNode plus = (PlusNode) node;
-                NFA inner = regexNodeToNFA(plus.node);
-                State start = new State();
-                State accept = new State();
-                start.addEpsilon(inner.start);
-                inner.accept.addEpsilon(inner.start);
-                inner.accept.addEpsilon(accept);
-                return new NFA(start, accept);
+                Fragment inner = regexNodeToNFA(builder, plus.node);
+                int start = builder.newState();
+                int accept = builder.newState();
+                builder.addEpsilon(start, inner.start);
+                builder.addEpsilon(inner.accept, inner.start);
+                builder.addEpsilon(inner.accept, accept);
+                return new Fragment(start, accept);
             } else if (node instanceof OptionalNode) {
                 OptionalNode opt = (OptionalNode) node;
-                NFA inner = regexNodeToNFA(opt.node);
-                State start = new State();
-                State accept = new State();
-                start.addEpsilon(inner.start);
-                start.addEpsilon(accept);
-                inner.accept.addEpsilon(accept);
-                return new NFA(start, accept);
+                Fragment inner = regexNodeToNFA(builder, opt.node);
+                int start = builder.newState();
+                int accept = builder.newState();
+                builder.addEpsilon(start, inner.start);
+                builder.addEpsilon(start, accept);
+                builder.addEpsilon(inner.accept, accept);
+                return new Fragment(start, accept);
             }
             throw new RuntimeException("Unsupported regex node");
         }
+        
+        // The parser builds concatenations and unions as left-deep chains as long as the regex,
+        // so walk the left spine with a list rather than recursing once per element. States and
+        // edges are created in the same order as the plain recursive construction.
+        private static Fragment chainToNFA(NFABuilder builder, RegexNode node) {
+            List<RegexNode> spine = new ArrayList<>();
+            while (node instanceof ConcatNode || node instanceof UnionNode) {
+                spine.add(node);
+                node = node instanceof ConcatNode ? ((ConcatNode) node).left : ((UnionNode) node).left;
+            }
+            Fragment left = regexNodeToNFA(builder, node);
+            for (int i = spine.size() - 1; i >= 0; i--) {
+                if (spine.get(i) instanceof ConcatNode) {
+                    Fragment right = regexNodeToNFA(builder, ((ConcatNode) spine.get(i)).right);
+                    builder.addEpsilon(left.accept, right.start);
+                    left = new Fragment(left.start, right.accept);
+                } else {
+                    Fragment right = regexNodeToNFA(builder, ((UnionNode) spine.get(i)).right);
+                    int start = builder.newState();
+                    int accept = builder.newState();
+                    builder.addEpsilon(start, left.start);
+                    builder.addEpsilon(start, right.start);
+                    builder.addEpsilon(left.accept, accept);
+                    builder.addEpsilon(right.accept, accept);
+                    left = new Fragment(start, accept);
+                }
+            }
+            return left;
+        }
     }
     
     // Build a master NFA by creating a new start state with ε–transitions to every token’s NFA.
-    public static NFA combineNFAs(List<NFA> nfaList) {
-        State masterStart = new State();
-        for (NFA nfa : nfaList) {
-            masterStart.addEpsilon(nfa.start);
+    public NFA combineNFAs(List<Fragment> fragments) {
+        int masterStart = newState();
+        for (Fragment fragment : fragments) {
+            addEpsilon(masterStart, fragment.start);
         }
-        return new NFA(masterStart, null);
+        return build(masterStart);
     }
     
     // --- DFA conversion via subset construction ---
-    public static void displayTransitionTable(State start) {
-        Set<Integer> visited = new HashSet<>();
-        displayState(start, visited);
-    }
-    
-    private static void displayState(State state, Set<Integer> visited) {
-        if (visited.contains(state.id)) return;
-        visited.add(state.id);
-        for (Map.Entry<Character, List<State>> entry : state.transitions.entrySet()) {
-            char symbol = entry.getKey();
-            String symStr = (symbol == WHITESPACE_MARKER) ? "\\s" :
-                            (symbol == NEWLINE_MARKER) ? "\\n" :
-                            (symbol == WILDCARD_MARKER) ? ".(wildcard)" : 
-                            Character.toString(symbol);
-            for (State target : entry.getValue()) {
-                System.out.println("State " + state.id + " --" + symStr + "--> State " + target.id);
+    // Dumps write piecewise to out (normally buffered), without building a String per line.
+    public static void displayTransitionTable(NFA nfa, PrintWriter out) {
+        for (int s : nfa.reachable()) {
+            for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++) {
+                out.print("State "); out.print(s);
+                out.print(" --"); out.print(CharRanges.rangeName(nfa.edgeLo[e], nfa.edgeHi[e]));
+                out.print("--> State "); out.println(nfa.edgeTarget[e]);
+            }
+            for (int e = nfa.epsilonStart[s]; e < nfa.epsilonStart[s + 1]; e++) {
+                out.print("State "); out.print(s);
+                out.print(" --ε--> State "); out.println(nfa.epsilonTarget[e]);
             }
         }
-        for (State target : state.epsilonTransitions) {
-            System.out.println("State " + state.id + " --ε--> State " + target.id);
-        }
-        for (List<State> targets : state.transitions.values()) {
-            for (State target : targets)
-                displayState(target, visited);
-        }
-        for (State target : state.epsilonTransitions)
-            displayState(target, visited);
     }
     
-    public static int countStates(State start) {
-        Set<Integer> visited = new HashSet<>();
-        collectStates(start, visited);
-        return visited.size();
+    public static int countStates(NFA nfa) {
+        return nfa.reachable().length;
     }
     
-    private static void collectStates(State state, Set<Integer> visited) {
-        if (visited.contains(state.id)) return;
-        visited.add(state.id);
-        for (List<State> targets : state.transitions.values()) {
-            for (State target : targets)
-                collectStates(target, visited);
+    // DFA edge on the inclusive char range [lo, hi]; a state's edges are sorted and disjoint.
+    public static class DFAEdge {
+        public final char lo, hi;
+        public final DFAState target;
+        public DFAEdge(char lo, char hi, DFAState target) {
+            this.lo = lo;
+            this.hi = hi;
+            this.target = target;
         }
-        for (State target : state.epsilonTransitions)
-            collectStates(target, visited);
     }
     
     public static class DFAState {
-        public Set<State> nfaStates;
-        public int id;
-        public boolean isAccept;
-        public Map<Character, DFAState> transitions = new HashMap<>();
-        public DFAState(Set<State> nfaStates, int id) {
+        public final int[] nfaStates; // sorted NFA state ids
+        public final int id;
+        public final boolean isAccept;
+        public final int acceptKind; // winning token kind: highest priority, then lowest kind
+        public List<DFAEdge> transitions = new ArrayList<>();
+        public DFAState(int[] nfaStates, int id, int acceptKind) {
             this.nfaStates = nfaStates;
             this.id = id;
-            for (State s : nfaStates)
-                if (s.isAccept) { isAccept = true; break; }
+            this.acceptKind = acceptKind;
+            this.isAccept = acceptKind >= 0;
         }
     }
     
-    public static Set<State> epsilonClosure(Set<State> states) {
-        Set<State> closure = new HashSet<>(states);
-        Stack<State> stack = new Stack<>();
-        stack.addAll(states);
-        while (!stack.isEmpty()) {
-            State s = stack.pop();
-            for (State t : s.epsilonTransitions) {
-                if (!closure.contains(t)) {
-                    closure.add(t);
-                    stack.push(t);
+    // Subset construction over the CSR NFA: state sets are long[] bitsets over NFA state ids
+    // (with cached hashes) used directly as hash keys, and the ε-closure of every single NFA
+    // state is computed once, so closure(move(S, c)) is just the union of the cached closures.
+    // Edges are char ranges; for each DFA state the ranges of its members are split into
+    // disjoint intervals, so the work depends on the number of ranges, not on alphabet size.
+    public static DFAState convertNFAtoDFA(NFA nfa) {
+        int n = nfa.stateCount;
+        int words = (n + 63) >>> 6;
+        
+        // Per-state ε-closures (iterative DFS), only for states reachable from the start.
+        long[][] closures = new long[n][];
+        int[] stack = new int[n];
+        for (int i : nfa.reachable()) {
+            long[] closure = new long[words];
+            closure[i >>> 6] |= 1L << i;
+            int sp = 0;
+            stack[sp++] = i;
+            while (sp > 0) {
+                int s = stack[--sp];
+                for (int e = nfa.epsilonStart[s]; e < nfa.epsilonStart[s + 1]; e++) {
+                    int t = nfa.epsilonTarget[e];
+                    if ((closure[t >>> 6] & (1L << t)) == 0) {
+                        closure[t >>> 6] |= 1L << t;
+                        stack[sp++] = t;
+                    }
                 }
             }
+            closures[i] = closure;
         }
-        return closure;
-    }
-    
-    public static Set<State> move(Set<State> states, char symbol) {
-        Set<State> result = new HashSet<>();
-        for (State s : states) {
-            if (s.transitions.containsKey(symbol))
-                result.addAll(s.transitions.get(symbol));
-            if (s.transitions.containsKey(WILDCARD_MARKER))
-                result.addAll(s.transitions.get(WILDCARD_MARKER));
+        
+        StateSet startSet = new StateSet(closures[nfa.start].clone());
+        DFAState startDFA = newDFAState(nfa, startSet.bits, 0);
+        Map<StateSet, DFAState> dfaStates = new HashMap<>();
+        dfaStates.put(startSet, startDFA);
+        List<StateSet> pending = new ArrayList<>();
+        List<DFAState> pendingDFA = new ArrayList<>();
+        pending.add(startSet);
+        pendingDFA.add(startDFA);
+        int maxEdges = nfa.edgeTarget.length;
+        char[] los = new char[maxEdges], his = new char[maxEdges];
+        int[] targets = new int[maxEdges];
+        for (int next = 0; next < pending.size(); next++) {
+            long[] bits = pending.get(next).bits;
+            DFAState dstate = pendingDFA.get(next);
+            // Gather the edges of every member, then split their ranges into disjoint intervals.
+            int count = 0;
+            for (int w = 0; w < words; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    int s = (w << 6) + Long.numberOfTrailingZeros(word);
+                    for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++) {
+                        los[count] = nfa.edgeLo[e];
+                        his[count] = nfa.edgeHi[e];
+                        targets[count++] = nfa.edgeTarget[e];
+                    }
+                }
+            }
+            if (count == 0) continue;
+            char[] bounds = CharRanges.boundaries(los, his, count);
+            long[][] moveSets = new long[bounds.length][];
+            for (int e = 0; e < count; e++) {
+                int last = CharRanges.intervalOf(bounds, his[e]);
+                for (int j = CharRanges.intervalOf(bounds, los[e]); j <= last; j++) {
+                    if (moveSets[j] == null) moveSets[j] = new long[words];
+                    or(moveSets[j], closures[targets[e]]);
+                }
+            }
+            DFAEdge previous = null;
+            for (int j = 0; j < bounds.length; j++) {
+                long[] set = moveSets[j];
+                if (set == null) { previous = null; continue; }
+                StateSet key = new StateSet(set);
+                DFAState dtarget = dfaStates.get(key);
+                if (dtarget == null) {
+                    dtarget = newDFAState(nfa, set, dfaStates.size());
+                    dfaStates.put(key, dtarget);
+                    pending.add(key);
+                    pendingDFA.add(dtarget);
+                }
+                char hi = CharRanges.intervalEnd(bounds, j);
+                if (previous != null && previous.target == dtarget) {
+                    previous = new DFAEdge(previous.lo, hi, dtarget);
+                    dstate.transitions.set(dstate.transitions.size() - 1, previous);
+                } else {
+                    previous = new DFAEdge(bounds[j], hi, dtarget);
+                    dstate.transitions.add(previous);
+                }
+            }
         }
-        return result;
+        return startDFA;
     }
     
-    public static String getStatesKey(Set<State> states) {
-        List<Integer> ids = new ArrayList<>();
-        for (State s : states) {
-            ids.add(s.id);
-        }
-        Collections.sort(ids);
-        StringBuilder sb = new StringBuilder();
-        for (Integer id : ids)
-            sb.append(id).append(",");
-        return sb.toString();
+    private static void or(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) into[i] |= from[i];
     }
     
-    public static Set<Character> getAlphabet(NFA nfa) {
-        Set<Character> alphabet = new HashSet<>();
-        Set<State> visited = new HashSet<>();
-        Stack<State> stack = new Stack<>();
-        stack.push(nfa.start);
-        while (!stack.isEmpty()) {
-            State s = stack.pop();
-            if (visited.contains(s))
-                continue;
-            visited.add(s);
-            for (Map.Entry<Character, List<State>> entry : s.transitions.entrySet()) {
-                alphabet.add(entry.getKey());
-                stack.addAll(entry.getValue());
+    // DFA state for an NFA state set: its members in id order and the token kind it accepts.
+    private static DFAState newDFAState(NFA nfa, long[] bits, int id) {
+        int size = 0;
+        for (long word : bits) size += Long.bitCount(word);
+        int[] members = new int[size];
+        int m = 0, acceptKind = -1, bestPriority = Integer.MIN_VALUE;
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(word);
+                members[m++] = s;
+                int kind = nfa.acceptKind[s];
+                if (kind < 0) continue;
+                if (nfa.priority[s] > bestPriority || (nfa.priority[s] == bestPriority && kind < acceptKind)) {
+                    bestPriority = nfa.priority[s];
+                    acceptKind = kind;
+                }
             }
-            stack.addAll(s.epsilonTransitions);
         }
-        return alphabet;
+        return new DFAState(members, id, acceptKind);
     }
     
-    public static DFAState convertNFAtoDFA(NFA nfa) {
-        int dfaStateIdCounter = 0;
-        Set<State> startSet = epsilonClosure(new HashSet<>(Arrays.asList(nfa.start)));
-        DFAState startDFA = new DFAState(startSet, dfaStateIdCounter++);
-        Map<String, DFAState> dfaStates = new HashMap<>();
-        String startKey = getStatesKey(startSet);
-        dfaStates.put(startKey, startDFA);
-        Queue<DFAState> unmarked = new LinkedList<>();
-        unmarked.add(startDFA);
-        Set<Character> alphabet = getAlphabet(nfa);
-        while (!unmarked.isEmpty()) {
-            DFAState dstate = unmarked.poll();
-            for (Character symbol : alphabet) {
-                Set<State> moveSet = move(dstate.nfaStates, symbol);
-                if (moveSet.isEmpty()) continue;
-                Set<State> closure = epsilonClosure(moveSet);
-                String key = getStatesKey(closure);
-                DFAState dtarget = dfaStates.get(key);
-                if (dtarget == null) {
-                    dtarget = new DFAState(closure, dfaStateIdCounter++);
-                    dfaStates.put(key, dtarget);
-                    unmarked.add(dtarget);
-                }
-                dstate.transitions.put(symbol, dtarget);
-            }
+    // Bitset over NFA state ids, hashable by content with the hash computed once.
+    private static final class StateSet {
+        final long[] bits;
+        final int hash;
+        StateSet(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) {
+            return o instanceof StateSet && ((StateSet) o).hash == hash && Arrays.equals(((StateSet) o).bits, bits);
         }
-        return startDFA;
     }
     
-    public static void displayDFATransitionTable(DFAState start) {
-        Set<Integer> visited = new HashSet<>();
-        displayDFAState(start, visited);
+    // Prints states in depth-first pre-order, each edge line followed by its target's subtree;
+    // iterative, with one (state, next edge) frame per state on the current path.
+    public static void displayDFATransitionTable(DFAState start, PrintWriter out) {
+        Set<DFAState> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DFAState> path = new ArrayDeque<>();
+        Deque<Integer> cursor = new ArrayDeque<>();
+        visited.add(start);
+        printDFAState(start, out);
+        path.push(start);
+        cursor.push(0);
+        while (!path.isEmpty()) {
+            DFAState state = path.peek();
+            int e = cursor.pop();
+            if (e == state.transitions.size()) {
+                path.pop();
+                continue;
+            }
+            cursor.push(e + 1);
+            DFAEdge edge = state.transitions.get(e);
+            out.print("  --"); out.print(CharRanges.rangeName(edge.lo, edge.hi));
+            out.print("--> DFA State "); out.println(edge.target.id);
+            if (visited.add(edge.target)) {
+                printDFAState(edge.target, out);
+                path.push(edge.target);
+                cursor.push(0);
+            }
+        }
     }
     
-    private static void displayDFAState(DFAState state, Set<Integer> visited) {
-        if (visited.contains(state.id)) return;
-        visited.add(state.id);
-        System.out.print("DFA State " + state.id + " [");
-        List<Integer> ids = new ArrayList<>();
-        for (State s : state.nfaStates)
-            ids.add(s.id);
-        Collections.sort(ids);
-        for (Integer id : ids)
-            System.out.print(id + " ");
-        System.out.print("]");
-        if (state.isAccept)
-            System.out.print(" (Accept)");
-        System.out.println();
-        for (Map.Entry<Character, DFAState> entry : state.transitions.entrySet()) {
-            System.out.println("  --" + entry.getKey() + "--> DFA State " + entry.getValue().id);
-            displayDFAState(entry.getValue(), visited);
+    private static void printDFAState(DFAState state, PrintWriter out) {
+        out.print("DFA State "); out.print(state.id); out.print(" [");
+        for (int id : state.nfaStates) {
+            out.print(id); out.print(' ');
+        }
+        out.print("]");
+        if (state.isAccept) {
+            out.print(" (Accept "); out.print(state.acceptKind); out.print(")");
         }
+        out.println();
     }
     
     public static int countDFAStates(DFAState start) {
-        Set<Integer> visited = new HashSet<>();
-        collectDFAStates(start, visited);
+        Set<DFAState> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DFAState> stack = new ArrayDeque<>();
+        visited.add(start);
+        stack.push(start);
+        while (!stack.isEmpty())
+            for (DFAEdge edge : stack.pop().transitions)
+                if (visited.add(edge.target)) stack.push(edge.target);
         return visited.size();
     }
-    
-    private static void collectDFAStates(DFAState state, Set<Integer> visited) {
-        if (visited.contains(state.id)) return;
-        visited.add(state.id);
-        for (DFAState target : state.transitions.values())
-            collectDFAStates(target, visited);
-    }
 }
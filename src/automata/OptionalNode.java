@@ -0,0 +1,6 @@
+package automata;
+
+class OptionalNode extends RegexNode {
+    public RegexNode node;
+    public OptionalNode(RegexNode node) { this.node = node; }
+}
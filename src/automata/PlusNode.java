@@ -0,0 +1,6 @@
+package automata;
+
+class PlusNode extends RegexNode {
+    public RegexNode node;
+    public PlusNode(RegexNode node) { this.node = node; }
+}
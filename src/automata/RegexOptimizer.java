@@ -0,0 +1,200 @@
+package automata;
+
+import java.util.*;
+
+// Rewrites a parsed regex into a smaller tree for the same language before Thompson's
+// construction, which gives every node its own states and ε-edges:
+//  - alternatives that match one char are merged into one CharClassNode, so (0|1|...|9)
+//    becomes [0-9], two states instead of forty;
+//  - alternatives with a common first element are factored, so global|local|... becomes a trie
+//    (xA|xB = x(A|B), and x|xA = xA?), and duplicate alternatives are dropped;
+//  - nested quantifiers collapse (X** = X*, (X+)? = X*, ...);
+//  - identical subtrees are hash-consed into one node, which is what lets factoring compare
+//    elements by identity. The NFA still gets a fragment per occurrence.
+// Concatenations and unions are rebuilt as left-deep chains, as the parser builds them.
+// One optimizer holds the hash-cons table, so trees optimized by the same instance share nodes.
+public final class RegexOptimizer {
+    private final Map<Key, RegexNode> consed = new HashMap<>();
+
+    public RegexNode optimize(RegexNode node) {
+        if (node instanceof LiteralNode) {
+            char c = ((LiteralNode) node).c;
+            if (c == NFABuilder.WILDCARD_MARKER) return cons(new CharClassNode(new char[] { Character.MIN_VALUE, Character.MAX_VALUE }));
+            return cons(node);
+        } else if (node instanceof CharClassNode) {
+            char[] ranges = ((CharClassNode) node).ranges;
+            // A one-char class is that literal, unless the char is the wildcard marker.
+            if (ranges.length == 2 && ranges[0] == ranges[1] && ranges[0] != NFABuilder.WILDCARD_MARKER)
+                return cons(new LiteralNode(ranges[0]));
+            return cons(node);
+        } else if (node instanceof ConcatNode) {
+            List<RegexNode> elements = new ArrayList<>();
+            for (RegexNode element : spine(node, ConcatNode.class))
+                elements.addAll(spine(optimize(element), ConcatNode.class));
+            return concat(elements);
+        } else if (node instanceof UnionNode) {
+            List<RegexNode> alternatives = new ArrayList<>();
+            for (RegexNode alternative : spine(node, UnionNode.class))
+                alternatives.addAll(spine(optimize(alternative), UnionNode.class));
+            return union(alternatives);
+        } else if (node instanceof StarNode) {
+            return star(optimize(((StarNode) node).node));
+        } else if (node instanceof PlusNode) {
+            return plus(optimize(((PlusNode) node).node));
+        } else if (node instanceof OptionalNode) {
+            return optional(optimize(((OptionalNode) node).node));
+        }
+        throw new RuntimeException("Unsupported regex node");
+    }
+
+    // Distinct nodes in the hash-cons table.
+    public int distinctNodes() { return consed.size(); }
+
+    private RegexNode star(RegexNode inner) {
+        if (inner instanceof StarNode) return inner;
+        if (inner instanceof PlusNode) return star(((PlusNode) inner).node);
+        if (inner instanceof OptionalNode) return star(((OptionalNode) inner).node);
+        return cons(new StarNode(inner));
+    }
+
+    private RegexNode plus(RegexNode inner) {
+        if (inner instanceof StarNode || inner instanceof PlusNode) return inner;
+        if (inner instanceof OptionalNode) return star(((OptionalNode) inner).node);
+        return cons(new PlusNode(inner));
+    }
+
+    private RegexNode optional(RegexNode inner) {
+        if (inner instanceof StarNode || inner instanceof OptionalNode) return inner;
+        if (inner instanceof PlusNode) return star(((PlusNode) inner).node);
+        return cons(new OptionalNode(inner));
+    }
+
+    // Left-deep concatenation of optimized elements (none of them a concatenation).
+    private RegexNode concat(List<RegexNode> elements) {
+        RegexNode node = elements.get(0);
+        for (int i = 1; i < elements.size(); i++)
+            node = cons(new ConcatNode(node, elements.get(i)));
+        return node;
+    }
+
+    // Union of optimized alternatives (none of them a union): duplicates dropped, common first
+    // elements factored out, single chars merged into one class.
+    private RegexNode union(List<RegexNode> alternatives) {
+        Map<RegexNode, List<List<RegexNode>>> byHead = new LinkedHashMap<>(); // consed, so by identity
+        for (RegexNode alternative : alternatives) {
+            List<RegexNode> elements = spine(alternative, ConcatNode.class);
+            byHead.computeIfAbsent(elements.get(0), head -> new ArrayList<>()).add(elements.subList(1, elements.size()));
+        }
+        List<RegexNode> factored = new ArrayList<>();
+        for (Map.Entry<RegexNode, List<List<RegexNode>>> group : byHead.entrySet()) {
+            boolean empty = false;
+            List<RegexNode> rests = new ArrayList<>();
+            for (List<RegexNode> rest : group.getValue()) {
+                if (rest.isEmpty()) empty = true;
+                else if (!rests.contains(concat(rest))) rests.add(concat(rest));
+            }
+            List<RegexNode> elements = new ArrayList<>();
+            elements.add(group.getKey());
+            if (!rests.isEmpty()) {
+                List<RegexNode> tails = new ArrayList<>();
+                for (RegexNode rest : rests) tails.addAll(spine(rest, UnionNode.class));
+                RegexNode tail = rests.size() == 1 ? rests.get(0) : union(tails);
+                tail = empty ? optional(tail) : tail;
+                elements.addAll(spine(tail, ConcatNode.class));
+            }
+            factored.add(concat(elements));
+        }
+
+        // Merge the one-char alternatives into a class where the first of them was.
+        List<RegexNode> merged = new ArrayList<>();
+        StringBuilder ranges = new StringBuilder();
+        int at = -1;
+        for (RegexNode alternative : factored) {
+            if (alternative instanceof LiteralNode) {
+                char c = ((LiteralNode) alternative).c;
+                ranges.append(c).append(c);
+            } else if (alternative instanceof CharClassNode) {
+                ranges.append(((CharClassNode) alternative).ranges);
+            } else {
+                merged.add(alternative);
+                continue;
+            }
+            if (at < 0) {
+                at = merged.size();
+                merged.add(alternative);
+            }
+        }
+        if (at >= 0 && ranges.length() > 2)
+            merged.set(at, optimize(new CharClassNode(ranges.toString().toCharArray())));
+
+        RegexNode node = merged.get(0);
+        for (int i = 1; i < merged.size(); i++)
+            node = cons(new UnionNode(node, merged.get(i)));
+        return node;
+    }
+
+    // The elements of a left-deep chain of type (or of any nesting of it), in order.
+    private static List<RegexNode> spine(RegexNode node, Class<? extends RegexNode> type) {
+        List<RegexNode> elements = new ArrayList<>();
+        Deque<RegexNode> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            RegexNode n = pending.pop();
+            if (!type.isInstance(n)) {
+                elements.add(n);
+            } else if (n instanceof ConcatNode) {
+                pending.push(((ConcatNode) n).right);
+                pending.push(((ConcatNode) n).left);
+            } else {
+                pending.push(((UnionNode) n).right);
+                pending.push(((UnionNode) n).left);
+            }
+        }
+        return elements;
+    }
+
+    // The table's node equal to this one, whose children are already consed.
+    private RegexNode cons(RegexNode node) {
+        return consed.computeIfAbsent(new Key(node), key -> node);
+    }
+
+    // Node kind, children by identity and chars by value.
+    private static final class Key {
+        final Class<?> type;
+        final RegexNode left, right;
+        final char[] chars;
+        final int hash;
+
+        Key(RegexNode node) {
+            type = node.getClass();
+            if (node instanceof LiteralNode) {
+                left = right = null;
+                chars = new char[] { ((LiteralNode) node).c };
+            } else if (node instanceof CharClassNode) {
+                left = right = null;
+                chars = ((CharClassNode) node).ranges;
+            } else if (node instanceof ConcatNode) {
+                left = ((ConcatNode) node).left;
+                right = ((ConcatNode) node).right;
+                chars = null;
+            } else if (node instanceof UnionNode) {
+                left = ((UnionNode) node).left;
+                right = ((UnionNode) node).right;
+                chars = null;
+            } else {
+                left = node instanceof StarNode ? ((StarNode) node).node
+                        : node instanceof PlusNode ? ((PlusNode) node).node : ((OptionalNode) node).node;
+                right = null;
+                chars = null;
+            }
+            hash = (type.hashCode() * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right) + Arrays.hashCode(chars);
+        }
+
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return k.hash == hash && k.type == type && k.left == left && k.right == right && Arrays.equals(k.chars, chars);
+        }
+    }
+}
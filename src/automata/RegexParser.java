@@ -1,50 +1,5 @@
 package automata;
 
-import java.util.HashSet;
-import java.util.Set;
-
-// --- Abstract Syntax Tree (AST) for regex ---
-
-
-class LiteralNode extends RegexNode {
-    public char c;
-    public LiteralNode(char c) { this.c = c; }
-}
-
-class ConcatNode extends RegexNode {
-    public RegexNode left, right;
-    public ConcatNode(RegexNode left, RegexNode right) {
-        this.left = left; this.right = right;
-    }
-}
-
-class UnionNode extends RegexNode {
-    public RegexNode left, right;
-    public UnionNode(RegexNode left, RegexNode right) {
-        this.left = left; this.right = right;
-    }
-}
-
-class StarNode extends RegexNode {
-    public RegexNode node;
-    public StarNode(RegexNode node) { this.node = node; }
-}
-
-class PlusNode extends RegexNode {
-    public RegexNode node;
-    public PlusNode(RegexNode node) { this.node = node; }
-}
-
-class OptionalNode extends RegexNode {
-    public RegexNode node;
-    public OptionalNode(RegexNode node) { this.node = node; }
-}
-
-class CharClassNode extends RegexNode {
-    public Set<Character> chars;
-    public CharClassNode(Set<Character> chars) { this.chars = chars; }
-}
-
 // --- RegexParser using recursive descent ---
 public class RegexParser {
     private String regex;
@@ -122,23 +77,21 @@ public class RegexParser {
     
     private RegexNode parseCharClass() {
         consume(); // '['
-        Set<Character> set = new HashSet<>();
+        StringBuilder ranges = new StringBuilder();
         // For simplicity, we do not implement negation.
         while (pos < regex.length() && peek() != ']') {
             char start = consume();
-            if (peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos+1) != ']') {
+            if (pos < regex.length() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos+1) != ']') {
                 consume(); // '-'
                 char end = consume();
-                for (char ch = start; ch <= end; ch++) {
-                    set.add(ch);
-                }
+                ranges.append(start).append(end);
             } else {
-                set.add(start);
+                ranges.append(start).append(start);
             }
         }
         if (pos >= regex.length() || consume() != ']')
             throw new RuntimeException("Unterminated character class at position " + pos);
-        return new CharClassNode(set);
+        return new CharClassNode(ranges.toString().toCharArray());
     }
     
     private char peek() {
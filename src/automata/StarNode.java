@@ -0,0 +1,6 @@
+package automata;
+
+class StarNode extends RegexNode {
+    public RegexNode node;
+    public StarNode(RegexNode node) { this.node = node; }
+}
@@ -0,0 +1,8 @@
+package automata;
+
+class UnionNode extends RegexNode {
+    public RegexNode left, right;
+    public UnionNode(RegexNode left, RegexNode right) {
+        this.left = left; this.right = right;
+    }
+}
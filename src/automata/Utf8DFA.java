@@ -0,0 +1,171 @@
+package automata;
+
+import java.util.*;
+
+// Byte-level form of a char DFA, for lexing UTF-8 input without decoding it. Every char
+// transition becomes the byte sequence that encodes the char: states 0..n-1 are the char DFA's
+// own states (same ids, same accept kinds) and the states after them sit inside a multi-byte
+// sequence, never accepting. Those are built per lead byte and continuation byte and shared by
+// content, so a state's row for "any 3-byte char" collapses to a handful of states when the
+// char DFA treats most non-ASCII chars alike. Only well-formed UTF-8 has transitions: overlong
+// forms, surrogate code points, stray continuation bytes and lead bytes past U+10FFFF die.
+// A supplementary code point is stepped as its two UTF-16 surrogates, so it lands where the
+// char DFA does, but a token cannot end between the two halves.
+//
+// The result is an ordinary CompiledDFA over the alphabet 0..255 (classMap covers all 256
+// bytes), with classes shared by bytes whose columns agree; exitChars works on bytes as well.
+public final class Utf8DFA {
+    private Utf8DFA() { }
+
+    public static CompiledDFA compile(CompiledDFA dfa) {
+        if (dfa instanceof LazyDFA)
+            throw new IllegalStateException("A lazy DFA has no complete table to re-encode");
+        return new Utf8DFA.Builder(dfa).build();
+    }
+
+    private static final class Builder {
+        final CompiledDFA dfa;
+        final List<int[]> rows = new ArrayList<>();              // byte rows, indexed by state
+        final Map<Row, Integer> shared = new HashMap<>();        // intermediate rows by content
+        // The last byte of a sequence picks a char within a 64-char block (the code point's top
+        // bits), so its row depends only on the state and the classes of the block's chars.
+        final int[] blockPattern = new int[0x10000 >> 6];       // block -> pattern id
+        final List<char[]> patterns = new ArrayList<>();        // pattern id -> class per char
+        final Map<Long, Integer> lastByteRows = new HashMap<>(); // (state, pattern) -> state
+        final Map<Row, Integer> surrogateRows = new HashMap<>();  // high surrogate targets -> state
+
+        Builder(CompiledDFA dfa) {
+            this.dfa = dfa;
+            Map<String, Integer> ids = new HashMap<>();
+            for (int block = 0; block < blockPattern.length; block++) {
+                char[] classes = new char[64];
+                for (int i = 0; i < 64; i++) classes[i] = (char) dfa.classOf((char) ((block << 6) | i));
+                blockPattern[block] = ids.computeIfAbsent(new String(classes), key -> {
+                    patterns.add(classes);
+                    return patterns.size() - 1;
+                });
+            }
+        }
+
+        CompiledDFA build() {
+            int n = dfa.stateCount;
+            for (int s = 0; s < n; s++) rows.add(null); // the char states keep their ids
+            for (int s = 0; s < n; s++) {
+                int[] row = new int[256];
+                Arrays.fill(row, -1);
+                for (int b = 0; b < 0x80; b++)
+                    row[b] = dfa.next(s, (char) b);
+                for (int lead = 0xC2; lead <= 0xDF; lead++)
+                    row[lead] = lastByte(s, lead & 0x1F);
+                for (int lead = 0xE0; lead <= 0xEF; lead++) {
+                    int[] second = new int[256];
+                    Arrays.fill(second, -1);
+                    int lo = lead == 0xE0 ? 0xA0 : 0x80, hi = lead == 0xED ? 0x9F : 0xBF;
+                    for (int b1 = lo; b1 <= hi; b1++)
+                        second[b1] = lastByte(s, ((lead & 0x0F) << 6) | (b1 & 0x3F));
+                    row[lead] = intern(second);
+                }
+                for (int lead = 0xF0; lead <= 0xF4; lead++) {
+                    int[] second = new int[256];
+                    Arrays.fill(second, -1);
+                    int lo = lead == 0xF0 ? 0x90 : 0x80, hi = lead == 0xF4 ? 0x8F : 0xBF;
+                    for (int b1 = lo; b1 <= hi; b1++) {
+                        // The high surrogate is fixed by the lead byte, b1 and the top two bits
+                        // of b2, the low surrogate's block by the rest of b2; so the row for b2
+                        // only depends on the states the four possible high surrogates lead to.
+                        int[] targets = new int[4];
+                        for (int top = 0; top < 4; top++) {
+                            int high = 0xD800 + ((((lead & 0x07) << 8) | ((b1 & 0x3F) << 2) | top) - 0x40);
+                            targets[top] = dfa.next(s, (char) high);
+                        }
+                        second[b1] = surrogateRows.computeIfAbsent(new Row(targets), key -> {
+                            int[] third = new int[256];
+                            Arrays.fill(third, -1);
+                            for (int b2 = 0x80; b2 <= 0xBF; b2++) {
+                                int t = targets[(b2 & 0x3F) >> 4];
+                                if (t >= 0) third[b2] = lastByte(t, (0xDC00 >> 6) | (b2 & 0x0F));
+                            }
+                            return intern(third);
+                        });
+                    }
+                    row[lead] = intern(second);
+                }
+                rows.set(s, row);
+            }
+            return table(n);
+        }
+
+        // State before the last byte of a char in block (its code point >> 6), from state s.
+        int lastByte(int s, int block) {
+            int pattern = blockPattern[block];
+            return lastByteRows.computeIfAbsent((long) s * patterns.size() + pattern, key -> {
+                char[] classes = patterns.get(pattern);
+                int[] tail = new int[256];
+                Arrays.fill(tail, -1);
+                for (int i = 0; i < 64; i++)
+                    tail[0x80 | i] = dfa.table[s * dfa.classCount + classes[i]];
+                return intern(tail);
+            });
+        }
+
+        // State for an intermediate row, shared with any earlier row of the same content;
+        // -1 if the row has no transition at all.
+        int intern(int[] row) {
+            boolean dead = true;
+            for (int t : row) if (t >= 0) { dead = false; break; }
+            if (dead) return -1;
+            Row key = new Row(row);
+            Integer id = shared.get(key);
+            if (id == null) {
+                id = rows.size();
+                rows.add(row);
+                shared.put(key, id);
+            }
+            return id;
+        }
+
+        // Groups the 256 byte columns into classes and packs the table.
+        CompiledDFA table(int charStates) {
+            int n = rows.size();
+            char[] classMap = new char[256];
+            List<Integer> representatives = new ArrayList<>();
+            Map<Row, Integer> classOf = new HashMap<>();
+            for (int b = 0; b < 256; b++) {
+                int[] column = new int[n];
+                for (int s = 0; s < n; s++) column[s] = rows.get(s)[b];
+                Row key = new Row(column);
+                Integer cls = classOf.get(key);
+                if (cls == null) {
+                    cls = representatives.size();
+                    classOf.put(key, cls);
+                    representatives.add(b);
+                }
+                classMap[b] = (char) (int) cls;
+            }
+            int k = representatives.size();
+            int[] table = new int[Math.multiplyExact(n, k)];
+            int[] acceptKind = new int[n];
+            for (int s = 0; s < n; s++) {
+                for (int cls = 0; cls < k; cls++)
+                    table[s * k + cls] = rows.get(s)[representatives.get(cls)];
+                acceptKind[s] = s < charStates ? dfa.acceptKind[s] : -1;
+            }
+            // No byte is >= 256, so the tail class is never used; any class will do.
+            return new CompiledDFA(n, k, classMap, classMap[255], table, acceptKind, dfa.tokenNames.clone());
+        }
+    }
+
+    // int[] hashable by content.
+    private static final class Row {
+        final int[] values;
+        final int hash;
+        Row(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) {
+            return o instanceof Row && ((Row) o).hash == hash && Arrays.equals(((Row) o).values, values);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import automata.CompiledDFA;
+import lexer.ErrorHandler;
+import lexer.LexerMetrics;
+import lexer.LexerTableCache;
+import lexer.LexicalAnalyzer;
+import lexer.SymbolInterner;
+import lexer.SymbolTable;
+import token.TokenBuffer;
+
+// Batch mode: lexes many files concurrently. The compiled DFA is built (or loaded from the
+// table cache) once and shared read-only by every worker; each file gets its own
+// LexicalAnalyzer, ErrorHandler and SymbolTable. The symbol tables share one SymbolInterner,
+// so a name is stored once for the whole batch and has the same id in every file; that is the
+// only mutable state the tasks share, and each table only goes to it for names new to its file.
+//
+// Usage: BatchLexer [--threads N | --virtual] [--tokens] [--metrics] [--linear] [--charset NAME | --utf8] <file|dir|@list>...
+//   A directory is walked recursively; @list names a file with one path per line.
+//   --threads N  fixed pool of N platform threads (default: one per processor)
+//   --virtual    one virtual thread per file
+//   --tokens     also print every token
+//   --metrics    count tokens/chars per kind, backtracking and build/scan time (LexerMetrics)
+//   --linear     linear-time maximal munch, for untrusted input (LexicalAnalyzer.linearTime)
+//   --utf8       lex each memory-mapped file as UTF-8 bytes, with no decoding pass
+//                (LexicalAnalyzer.tokenizeUtf8); sizes and offsets are then in bytes
+public class BatchLexer {
+    private final CompiledDFA dfa;
+    private final ExecutorService pool;
+    private final Charset charset;
+    private final boolean keepTokens;
+    private final LexerMetrics metrics; // null when not counting
+    private final boolean linearTime;
+    private final boolean utf8;
+    private final SymbolInterner interner = new SymbolInterner();
+
+    // Outcome of lexing one file; failure is set (and the rest empty) if it could not be read.
+    public static class FileResult {
+        public final Path file;
+        public final long chars;           // bytes when lexing UTF-8 as bytes
+        public final int tokenCount;
+        public final TokenBuffer tokens;   // null unless tokens were kept
+        public final List<String> errors;
+        public final int symbols;
+        public final long nanos;
+        public final IOException failure;
+
+        FileResult(Path file, long chars, int tokenCount, TokenBuffer tokens, List<String> errors, int symbols, long nanos, IOException failure) {
+            this.file = file;
+            this.chars = chars;
+            this.tokenCount = tokenCount;
+            this.tokens = tokens;
+            this.errors = errors;
+            this.symbols = symbols;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+    }
+
+    // With utf8 set, files are lexed as UTF-8 bytes and charset is not used.
+    public BatchLexer(CompiledDFA dfa, ExecutorService pool, Charset charset, boolean keepTokens, LexerMetrics metrics, boolean linearTime, boolean utf8) {
+        this.dfa = dfa;
+        this.pool = pool;
+        this.charset = charset;
+        this.keepTokens = keepTokens;
+        this.metrics = metrics;
+        this.linearTime = linearTime;
+        this.utf8 = utf8;
+    }
+
+    // Identifier names interned by all files lexed so far.
+    public SymbolInterner interner() { return interner; }
+
+    // Lexes every file on the pool; results come back in the order of files.
+    public List<FileResult> run(List<Path> files) throws InterruptedException {
+        List<Callable<FileResult>> tasks = new ArrayList<>(files.size());
+        for (Path file : files)
+            tasks.add(() -> lexFile(file));
+        List<FileResult> results = new ArrayList<>(files.size());
+        for (Future<FileResult> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private FileResult lexFile(Path file) {
+        if (utf8) return lexBytes(file);
+        long start = System.nanoTime();
+        String source;
+        try {
+            source = new String(Files.readAllBytes(file), charset); // malformed input is replaced
+        } catch (IOException e) {
+            return new FileResult(file, 0, 0, null, List.of(), 0, System.nanoTime() - start, e);
+        }
+        ErrorHandler errorHandler = new ErrorHandler();
+        SymbolTable symbolTable = new SymbolTable(interner);
+        TokenBuffer tokens = new LexicalAnalyzer(dfa, errorHandler, symbolTable, metrics).linearTime(linearTime).tokenizeToBuffer(source);
+        return new FileResult(file, source.length(), tokens.size(), keepTokens ? tokens : null,
+                errorHandler.errors(), symbolTable.size(), System.nanoTime() - start, null);
+    }
+
+    private FileResult lexBytes(Path file) {
+        long start = System.nanoTime();
+        ErrorHandler errorHandler = new ErrorHandler();
+        SymbolTable symbolTable = new SymbolTable(interner);
+        TokenBuffer tokens;
+        try {
+            tokens = new LexicalAnalyzer(dfa, errorHandler, symbolTable, metrics).tokenizeUtf8(file);
+        } catch (IOException e) {
+            return new FileResult(file, 0, 0, null, List.of(), 0, System.nanoTime() - start, e);
+        }
+        return new FileResult(file, tokens.bytes().limit(), tokens.size(), keepTokens ? tokens : null,
+                errorHandler.errors(), symbolTable.size(), System.nanoTime() - start, null);
+    }
+
+    // Expands directories (recursively) and @list files into the regular files to lex.
+    public static List<Path> collectFiles(List<String> arguments) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(argument.substring(1))))
+                    if (!line.isBlank()) files.add(Paths.get(line.strip()));
+                continue;
+            }
+            Path path = Paths.get(argument);
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false, printTokens = false, countMetrics = false, linearTime = false, utf8 = false;
+        Charset charset = StandardCharsets.UTF_8;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--virtual" -> virtual = true;
+                case "--tokens" -> printTokens = true;
+                case "--metrics" -> countMetrics = true;
+                case "--linear" -> linearTime = true;
+                case "--charset" -> charset = Charset.forName(args[++i]);
+                case "--utf8" -> utf8 = true;
+                default -> inputs.add(args[i]);
+            }
+        }
+        if (utf8 && (linearTime || !charset.equals(StandardCharsets.UTF_8))) {
+            System.err.println("--utf8 lexes UTF-8 bytes directly; it cannot be combined with --linear or another --charset");
+            System.exit(2);
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: BatchLexer [--threads N | --virtual] [--tokens] [--metrics] [--linear] [--charset NAME | --utf8] <file|dir|@list>...");
+            System.exit(2);
+        }
+
+        LexerMetrics metrics = countMetrics ? new LexerMetrics() : null;
+        long buildStart = System.nanoTime();
+        CompiledDFA dfa = LexerTableCache.loadOrBuild(CompilerFrontEnd.myLangSpec(), Paths.get(CompilerFrontEnd.TABLE_CACHE_FILE));
+        if (utf8) dfa.utf8(); // build the byte-level tables once, before the workers need them
+        if (metrics != null) metrics.recordBuild(System.nanoTime() - buildStart);
+        List<Path> files = collectFiles(inputs);
+        ExecutorService pool = virtual ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<FileResult> results;
+        BatchLexer batch = new BatchLexer(dfa, pool, charset, printTokens, metrics, linearTime, utf8);
+        try {
+            results = batch.run(files);
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long chars = 0, tokens = 0, errors = 0, failed = 0;
+        for (FileResult result : results) {
+            if (result.failure != null) {
+                failed++;
+                System.err.println(result.file + ": cannot read: " + result.failure.getMessage());
+                continue;
+            }
+            chars += result.chars;
+            tokens += result.tokenCount;
+            errors += result.errors.size();
+            System.out.printf("%s: %d tokens, %d errors, %d symbols (%.2f ms)%n",
+                    result.file, result.tokenCount, result.errors.size(), result.symbols, result.nanos / 1e6);
+            for (String error : result.errors)
+                System.out.println("  " + error);
+            if (printTokens)
+                for (int i = 0; i < result.tokens.size(); i++)
+                    System.out.println("  " + result.tokens.toToken(i));
+        }
+        System.out.printf("%nLexed %d files (%d unreadable) on %s in %.3f s: %d %s, %d tokens, %d errors%n",
+                results.size() - failed, failed, virtual ? "virtual threads" : threads + " thread(s)", seconds, chars, utf8 ? "bytes" : "chars", tokens, errors);
+        System.out.printf("Interned identifiers: %d (distinct, across all files)%n", batch.interner().size());
+        System.out.printf("Throughput: %.1f files/s, %.2f MB/s, %.0f tokens/s%n",
+                (results.size() - failed) / seconds, chars / seconds / (1 << 20), tokens / seconds);
+        if (metrics != null)
+            System.out.printf("%nMetrics:%n%s", metrics.snapshot());
+    }
+}
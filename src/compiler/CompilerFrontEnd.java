@@ -1,97 +1,282 @@
 package compiler;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 
+import automata.CompiledDFA;
+import automata.LazyDFA;
+import automata.DFAMinimizer;
+import automata.DotExport;
 import automata.NFABuilder;
 import automata.NFABuilder.DFAState;
 import lexer.ErrorHandler;
+import lexer.LexerTableCache;
 import lexer.LexicalAnalyzer;
 import lexer.SymbolTable;
-import token.Token;
+import lexer.TokenSpec;
+import token.TokenBuffer;
+import token.TokenOutput;
 
 public class CompilerFrontEnd {
-    public static void main(String[] args) {
-        // Reset state counter.
-        NFABuilder.stateIdCounter = 0;
-        
-        // Define token regex patterns.
-        Map<String, String> tokenRegexes = new LinkedHashMap<>();
-        tokenRegexes.put("KEYWORD", "global|local|const|int|float|bool|char|string|if|else|for|while|return");
-        tokenRegexes.put("BOOLEAN", "true|false");
-        tokenRegexes.put("INTEGER", "-?(0|1|2|3|4|5|6|7|8|9)+");
-        tokenRegexes.put("DECIMAL", "-?(0|1|2|3|4|5|6|7|8|9)+\\.(0|1|2|3|4|5|6|7|8|9)+(e(\\+|-)?(0|1|2|3|4|5|6|7|8|9)+)?");
-        tokenRegexes.put("STDOUT", "System\\.out\\.println|System\\.out\\.print");
-        tokenRegexes.put("STDIN", "System\\.in");
-        tokenRegexes.put("SINGLE_LINE_COMMENT", "//(.)*\\n");
-        tokenRegexes.put("MULTI_LINE_COMMENT", "/\\*((.|\\n)*)\\*/");
-        tokenRegexes.put("OPERATOR", "(==|=|\\+|-|\\*|/|%|>|<)");
-        tokenRegexes.put("DELIMITER", "(;|,|\\(|\\)|\\{|\\})");
-        tokenRegexes.put("STRING_LITERAL", "\"([^\"\\\\]|\\\\.)*\"");
-        tokenRegexes.put("CHARACTER_LITERAL", "'([^'\\\\]|\\\\.)'");
-        tokenRegexes.put("IDENTIFIER", "([a-z])([a-z])*");
-        
-        List<NFABuilder.NFA> nfaList = new ArrayList<>();
-        for (Map.Entry<String, String> entry : tokenRegexes.entrySet()) {
-            String tokenType = entry.getKey();
-            String regex = entry.getValue();
-            System.out.println("Building NFA for token " + tokenType + " using regex: " + regex);
-            NFABuilder.NFA nfa = NFABuilder.RegexToNFA.convert(regex);
-            nfa.accept.isAccept = true;
-            nfa.accept.tokenType = tokenType;
-            nfaList.add(nfa);
-            System.out.println("Transition table for " + tokenType + " NFA:");
-            NFABuilder.displayTransitionTable(nfa.start);
-            System.out.println("Total states for " + tokenType + " NFA: " + NFABuilder.countStates(nfa.start));
-            System.out.println("----------------------------------");
+    static final String TABLE_CACHE_FILE = "lexer.tables";
+    
+    static final String USAGE = "Usage: CompilerFrontEnd [--output full|summary|silent|jsonl|binary] [--out FILE]"
+            + " [--dot nfa|dfa|min FILE]... [--lazy STATES] [input-file (default input.txt)]";
+    
+    // Output modes:
+    //   full     the original report: automaton dumps (when tables are rebuilt), source, tokens, errors, symbols
+    //   summary  table and lexing statistics plus token counts per type (default)
+    //   silent   nothing; the exit status is 1 if there were lexical errors
+    //   jsonl    one JSON object per token (see token.TokenOutput)
+    //   binary   compact varint token stream (see token.TokenOutput)
+    // --out sends the report or token stream to FILE instead of stdout. --dot writes the NFA, DFA or
+    // minimized DFA in Graphviz format; it needs the automata, so the tables are rebuilt.
+    // --lazy builds DFA states while lexing (automata.LazyDFA) in a cache of at most STATES states
+    // instead of building or loading the full tables; summary mode adds the cache counters.
+    // Errors go to stderr in every mode except silent. All output is buffered.
+    public static void main(String[] args) throws IOException {
+        String mode = "summary";
+        String outFile = null;
+        String inputFile = "input.txt";
+        Map<String, Path> dot = new LinkedHashMap<>();
+        int lazyStates = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--output") && i + 1 < args.length) {
+                mode = args[++i];
+                if (!List.of("full", "summary", "silent", "jsonl", "binary").contains(mode))
+                    usage("Unknown output mode " + mode);
+            } else if (arg.equals("--out") && i + 1 < args.length) {
+                outFile = args[++i];
+            } else if (arg.equals("--dot") && i + 2 < args.length) {
+                String stage = args[++i];
+                if (!List.of("nfa", "dfa", "min").contains(stage))
+                    usage("Unknown automaton " + stage);
+                dot.put(stage, Paths.get(args[++i]));
+            } else if (arg.equals("--lazy") && i + 1 < args.length) {
+                try {
+                    lazyStates = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    usage("--lazy needs a number of states");
+                }
+                if (lazyStates < 4) usage("--lazy needs at least 4 states");
+            } else if (arg.startsWith("--")) {
+                usage("Unknown option " + arg);
+            } else {
+                inputFile = arg;
+            }
         }
+        if (lazyStates > 0 && !dot.isEmpty())
+            usage("--dot needs the full automata; it cannot be combined with --lazy");
         
-        NFABuilder.NFA masterNFA = NFABuilder.combineNFAs(nfaList);
-        System.out.println("\nCombined Master NFA Transition Table:");
-        NFABuilder.displayTransitionTable(masterNFA.start);
-        System.out.println("Total states in Combined Master NFA: " + NFABuilder.countStates(masterNFA.start));
+        // Reports to stdout keep the console encoding System.out would use; files are UTF-8.
+        OutputStream stream = outFile == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outFile);
+        Charset charset = outFile == null ? System.out.charset() : StandardCharsets.UTF_8;
+        try (OutputStream out = new BufferedOutputStream(stream, 1 << 16)) {
+            PrintWriter report = new PrintWriter(new OutputStreamWriter(out, charset));
+            boolean errors = run(mode, inputFile, dot, lazyStates, out, report);
+            report.flush();
+            if (errors && mode.equals("silent")) {
+                out.flush();
+                System.exit(1);
+            }
+        }
+    }
+    
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+    
+    // Lexes inputFile and reports in the given mode; returns true if there were lexical errors.
+    private static boolean run(String mode, String inputFile, Map<String, Path> dot, int lazyStates, OutputStream out, PrintWriter report) throws IOException {
+        boolean full = mode.equals("full"), summary = mode.equals("summary");
+        TokenSpec spec = myLangSpec();
         
-        DFAState dfaStart = NFABuilder.convertNFAtoDFA(masterNFA);
-        System.out.println("\nDFA Transition Table:");
-        NFABuilder.displayDFATransitionTable(dfaStart);
-        System.out.println("Total DFA states: " + countDFAStates(dfaStart));
+        // Reuse the cached tables when the spec is unchanged; otherwise rebuild (dumping the automata
+        // in full mode) and cache. A lazy DFA only needs the NFAs.
+        Path tableCache = Paths.get(TABLE_CACHE_FILE);
+        long buildStart = System.nanoTime();
+        LazyDFA lazy = lazyStates > 0 ? spec.compileLazy(lazyStates) : null;
+        CompiledDFA compiledDFA = lazy == null && dot.isEmpty() ? LexerTableCache.load(spec, tableCache) : lazy;
+        boolean loaded = compiledDFA != null && lazy == null;
+        if (lazy != null) {
+            if (full)
+                report.println("Lazy DFA: at most " + lazyStates + " states x " + lazy.classCount + " character classes");
+        } else if (loaded) {
+            if (full)
+                report.println("Loaded lexer tables from " + tableCache + ": " + compiledDFA.stateCount
+                        + " states x " + compiledDFA.classCount + " character classes");
+        } else {
+            compiledDFA = buildLexerTables(spec, full ? report : null, dot);
+            LexerTableCache.store(spec, compiledDFA, tableCache);
+        }
+        long buildNanos = System.nanoTime() - buildStart;
         
-        String source = readSourceFromFile("input.txt");
-        System.out.println("\nSource Code from file:");
-        System.out.println(source);
+        String source = readSourceFromFile(inputFile);
+        if (full) {
+            report.println("\nSource Code from file:");
+            report.println(source);
+        }
         
         ErrorHandler errorHandler = new ErrorHandler();
         SymbolTable symbolTable = new SymbolTable();
         
-        LexicalAnalyzer lexer = new LexicalAnalyzer(dfaStart, errorHandler, symbolTable);
-        List<Token> tokens = lexer.tokenize(source);
-        System.out.println("\nTokens:");
-        for (Token token : tokens)
-            System.out.println(token);
-        System.out.println("Total tokens: " + tokens.size());
+        LexicalAnalyzer lexer = new LexicalAnalyzer(compiledDFA, errorHandler, symbolTable);
+        long lexStart = System.nanoTime();
+        TokenBuffer tokens = lexer.tokenizeToBuffer(source);
+        long lexNanos = System.nanoTime() - lexStart;
         
-        if (errorHandler.hasErrors()) {
-            System.out.println("\nErrors:");
+        if (full) {
+            report.println("\nTokens:");
+            for (int i = 0; i < tokens.size(); i++)
+                report.println(tokens.toToken(i));
+            report.println("Total tokens: " + tokens.size());
+            if (errorHandler.hasErrors()) {
+                report.println("\nErrors:");
+                report.flush();
+                out.flush(); // keep the heading ahead of the errors on a shared terminal
+                errorHandler.printErrors();
+            }
+            report.println("\nSymbol Table:");
+            symbolTable.display(report);
+        } else if (summary) {
+            if (lazy != null)
+                report.printf("Lexer tables: lazy, at most %d states x %d character classes, %.3f ms%n",
+                        lazy.stateCount, lazy.classCount, buildNanos / 1e6);
+            else
+                report.printf("Lexer tables: %s, %d states x %d character classes, %.3f ms%n",
+                        loaded ? "loaded from " + tableCache : "built", compiledDFA.stateCount, compiledDFA.classCount, buildNanos / 1e6);
+            report.printf("%s: %d chars, %d tokens, %d errors, %d symbols, %.3f ms%n",
+                    inputFile, source.length(), tokens.size(), errorHandler.errors().size(), symbolTable.size(), lexNanos / 1e6);
+            if (lazy != null)
+                report.println("Lazy DFA: " + lazy.stats());
+            int[] perKind = new int[compiledDFA.tokenNames.length];
+            for (int i = 0; i < tokens.size(); i++)
+                perKind[tokens.kind(i)]++;
+            Map<String, Integer> perType = new LinkedHashMap<>(); // by reported type, in spec order
+            for (int kind = 0; kind < perKind.length; kind++)
+                if (perKind[kind] > 0)
+                    perType.merge(tokens.typeNames()[kind], perKind[kind], Integer::sum);
+            for (Map.Entry<String, Integer> e : perType.entrySet())
+                report.printf("  %-20s %d%n", e.getKey(), e.getValue());
+        } else if (mode.equals("jsonl")) {
+            TokenOutput.writeJsonl(tokens, report);
+        } else if (mode.equals("binary")) {
+            TokenOutput.writeBinary(tokens, out);
+        }
+        if (!full && !mode.equals("silent") && errorHandler.hasErrors()) {
+            report.flush();
+            out.flush();
             errorHandler.printErrors();
         }
+        return errorHandler.hasErrors();
+    }
+    
+    // Runs the full regex -> NFA -> DFA -> table pipeline, dumping every intermediate automaton to stdout.
+    public static CompiledDFA buildLexerTables(TokenSpec spec) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 1 << 16));
+        CompiledDFA compiledDFA = buildLexerTables(spec, out, Map.of());
+        out.flush();
+        return compiledDFA;
+    }
+    
+    // As above, dumping to out (nothing when out is null) and writing the automata named in dot
+    // ("nfa", "dfa", "min") as Graphviz files.
+    public static CompiledDFA buildLexerTables(TokenSpec spec, PrintWriter out, Map<String, Path> dot) {
+        NFABuilder builder = new NFABuilder(); // numbers NFA states from 0
+        List<NFABuilder.Fragment> nfaList = new ArrayList<>();
+        NFABuilder unoptimized = new NFABuilder(); // the regexes as written, for the state counts
+        List<NFABuilder.Fragment> unoptimizedList = new ArrayList<>();
+        for (int kind = 0; kind < spec.size(); kind++) {
+            TokenSpec.Entry entry = spec.get(kind);
+            if (out != null) out.println("Building NFA for token " + entry.name + " using regex: " + entry.regex);
+            NFABuilder.Fragment fragment = spec.buildNFA(builder, kind);
+            nfaList.add(fragment);
+            if (out == null) continue;
+            NFABuilder.NFA nfa = builder.build(fragment.start);
+            out.println("Transition table for " + entry.name + " NFA:");
+            NFABuilder.displayTransitionTable(nfa, out);
+            NFABuilder.Fragment written = spec.buildNFA(unoptimized, kind, false);
+            unoptimizedList.add(written);
+            out.println("Total states for " + entry.name + " NFA: " + NFABuilder.countStates(nfa)
+                    + " (" + NFABuilder.countStates(unoptimized.build(written.start)) + " before regex optimization)");
+            out.println("----------------------------------");
+        }
+        
+        NFABuilder.NFA masterNFA = builder.combineNFAs(nfaList);
+        if (out != null) {
+            out.println("\nCombined Master NFA Transition Table:");
+            NFABuilder.displayTransitionTable(masterNFA, out);
+            out.println("Total states in Combined Master NFA: " + NFABuilder.countStates(masterNFA)
+                    + " (" + NFABuilder.countStates(unoptimized.combineNFAs(unoptimizedList)) + " before regex optimization)");
+        }
+        if (dot.containsKey("nfa"))
+            writeDot(dot.get("nfa"), w -> DotExport.write(masterNFA, spec.names(), w));
+        
+        DFAState dfaStart = NFABuilder.convertNFAtoDFA(masterNFA);
+        if (out != null) {
+            out.println("\nDFA Transition Table:");
+            NFABuilder.displayDFATransitionTable(dfaStart, out);
+            out.println("Total DFA states: " + countDFAStates(dfaStart));
+        }
+        if (dot.containsKey("dfa"))
+            writeDot(dot.get("dfa"), w -> DotExport.write(dfaStart, spec.names(), w));
         
-        System.out.println("\nSymbol Table:");
-        symbolTable.display();
+        DFAState minimizedStart = DFAMinimizer.minimize(dfaStart);
+        if (out != null) {
+            out.println("\nMinimized DFA Transition Table:");
+            NFABuilder.displayDFATransitionTable(minimizedStart, out);
+            out.println("Total DFA states after minimization: " + countDFAStates(minimizedStart)
+                    + " (was " + countDFAStates(dfaStart) + ")");
+        }
+        if (dot.containsKey("min"))
+            writeDot(dot.get("min"), w -> DotExport.write(minimizedStart, spec.names(), w));
+        
+        CompiledDFA compiledDFA = CompiledDFA.compile(minimizedStart, spec.names());
+        if (out != null)
+            out.println("Compiled DFA: " + compiledDFA.stateCount + " states x "
+                    + compiledDFA.classCount + " character classes");
+        return compiledDFA;
     }
     
-    public static int countDFAStates(NFABuilder.DFAState start) {
-        Set<Integer> visited = new HashSet<>();
-        collectDFAStates(start, visited);
-        return visited.size();
+    private static void writeDot(Path file, Consumer<PrintWriter> export) {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            export.accept(w);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    // MyLang token specification in declaration order, with the priority used to resolve
+    // states that accept more than one token type (higher wins).
+    public static TokenSpec myLangSpec() {
+        TokenSpec spec = new TokenSpec();
+        spec.add("KEYWORD", "global|local|const|int|float|bool|char|string|if|else|for|while|return", 6);
+        spec.add("BOOLEAN", "true|false", 0);
+        spec.add("INTEGER", "-?(0|1|2|3|4|5|6|7|8|9)+", 5);
+        spec.add("DECIMAL", "-?(0|1|2|3|4|5|6|7|8|9)+\\.(0|1|2|3|4|5|6|7|8|9)+(e(\\+|-)?(0|1|2|3|4|5|6|7|8|9)+)?", 5);
+        spec.add("STDOUT", "System\\.out\\.println|System\\.out\\.print", 5);
+        spec.add("STDIN", "System\\.in", 5);
+        spec.add("SINGLE_LINE_COMMENT", "//(.)*\\n", 1);
+        spec.add("MULTI_LINE_COMMENT", "/\\*((.|\\n)*)\\*/", 1);
+        spec.add("OPERATOR", "(==|=|\\+|-|\\*|/|%|>|<)", 5);
+        spec.add("DELIMITER", "(;|,|\\(|\\)|\\{|\\})", 5);
+        spec.add("STRING_LITERAL", "\"([^\"\\\\]|\\\\.)*\"", 5);
+        spec.add("CHARACTER_LITERAL", "'([^'\\\\]|\\\\.)'", 5);
+        spec.add("IDENTIFIER", "([a-z])([a-z])*", 4);
+        return spec;
     }
     
-    private static void collectDFAStates(NFABuilder.DFAState state, Set<Integer> visited) {
-        if (visited.contains(state.id)) return;
-        visited.add(state.id);
-        for (NFABuilder.DFAState target : state.transitions.values())
-            collectDFAStates(target, visited);
+    public static int countDFAStates(NFABuilder.DFAState start) {
+        return NFABuilder.countDFAStates(start);
     }
     
     public static String readSourceFromFile(String fileName) {
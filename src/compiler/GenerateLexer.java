@@ -0,0 +1,44 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import automata.CompiledDFA;
+import lexer.LexerGenerator;
+
+// Build step: writes a standalone Java lexer for the MyLang spec (see lexer.LexerGenerator).
+//
+// Usage: GenerateLexer [--package NAME] [--class NAME] [--switch | --table] [--out DIR]
+//   The file goes to DIR/<package path>/<class>.java (default: ./MyLangLexer.java).
+//   --switch / --table force a match loop shape; by default it depends on the DFA size.
+public class GenerateLexer {
+    public static void main(String[] args) throws IOException {
+        String packageName = "", className = "MyLangLexer";
+        Boolean tableDriven = null;
+        Path dir = Paths.get(".");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--package" -> packageName = args[++i];
+                case "--class" -> className = args[++i];
+                case "--switch" -> tableDriven = false;
+                case "--table" -> tableDriven = true;
+                case "--out" -> dir = Paths.get(args[++i]);
+                default -> {
+                    System.err.println("Usage: GenerateLexer [--package NAME] [--class NAME] [--switch | --table] [--out DIR]");
+                    System.exit(2);
+                }
+            }
+        }
+        CompiledDFA dfa = CompilerFrontEnd.myLangSpec().compile();
+        String source = tableDriven == null
+                ? LexerGenerator.generate(dfa, packageName, className)
+                : LexerGenerator.generate(dfa, packageName, className, tableDriven);
+        Path file = dir.resolve(packageName.replace('.', '/')).resolve(className + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source, StandardCharsets.UTF_8);
+        System.out.println("Wrote " + file + " (" + dfa.stateCount + " DFA states)");
+    }
+}
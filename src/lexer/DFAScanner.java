@@ -0,0 +1,262 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+import automata.CompiledDFA;
+import automata.LazyDFA;
+
+// Maximal-munch scanner over a refillable char window, so the input never has to be held in
+// memory as a whole. The window keeps everything from the start of the token being scanned;
+// when the DFA runs off its end the window is compacted (and grown if a single token fills it)
+// and refilled, so backtracking to the last accepting position works across refills.
+// Positions in the window are relative to buf; base is the absolute offset of buf[0].
+// The scanner only reports raw accepted kinds and unrecognized chars; keyword checks, the
+// symbol table and error messages are left to the caller (see LexicalAnalyzer.nextToken).
+// Runs that cannot change the outcome are skipped in bulk: whitespace between tokens (unless a
+// chunking hook has to see every scan start) and runs of a state looping back to itself, which
+// need neither table steps nor accept bookkeeping per char (see skipSelfLoop).
+// Over a LazyDFA, a table entry of LazyDFA.UNKNOWN (which no compiled table holds) sends the
+// step to the lazy DFA to compute.
+final class DFAScanner {
+    static final int DEFAULT_WINDOW = 1 << 16;
+    static final int EOF = -1;
+    static final int ERROR = -2;
+
+    private final boolean[] discardKind;
+    private final Reader source;
+    private final char[] classMap;
+    private final int[] table;
+    private final int[] acceptKind;
+    private final char[][] exitChars;
+    private final int classCount;
+    private final int tailClass;
+    private final int startState;
+    private final LazyDFA lazy;        // the DFA if it is built on demand, else null
+    private int lazyMisses;            // steps of the current scan the lazy DFA had to compute
+
+    private char[] buf;
+    private int pos, limit;
+    private long base;
+    private boolean eof;
+    private int line;
+
+    // Current token, valid after next() returned a kind >= 0 (or ERROR, covering the bad char).
+    // start/end index into window().
+    int kind;
+    int start;
+    int end;
+    int tokenLine;
+
+    // Optional hooks for chunked lexing (see ParallelTokenizer). Every position where a new
+    // token scan begins is a "scan start"; given the same scan start, scanning is deterministic.
+    long stopAt = Long.MAX_VALUE;  // return EOF at the first scan start at or past this offset
+    BitSet scanStarts;             // if set, records scan starts relative to scanStartsBase
+    long scanStartsBase;
+    BitSet syncPoints;             // if set, return EOF at the first scan start found in it
+    long syncBase;
+    long stoppedAt = -1;           // scan start where stopAt or a sync point ended the scan
+    boolean synced;
+    // Furthest absolute offset the DFA has examined (the end of input counts as examined when a
+    // scan runs into it); callers may reset it between tokens (see IncrementalLexer).
+    long reach = -1;
+    // Per-scan counters when LexerMetrics are attached (see LexicalAnalyzer.attach), else null.
+    LexerMetrics.Scan scan;
+    // Failed (state, offset) pairs in linear-time mode (see LexicalAnalyzer.linearTime), else null.
+    // trail holds the states a scan ran through since its last accepting position (or its start).
+    FailureMemo memo;
+    private int[] trail;
+
+    DFAScanner(CompiledDFA dfa, boolean[] discardKind, Reader source, int windowSize) {
+        this(dfa, discardKind, source, windowSize, 0, 1);
+    }
+
+    // startOffset/startLine: absolute offset and line number of the first char the reader returns.
+    DFAScanner(CompiledDFA dfa, boolean[] discardKind, Reader source, int windowSize, long startOffset, int startLine) {
+        this.discardKind = discardKind;
+        this.source = source;
+        this.base = startOffset;
+        this.line = startLine;
+        this.classMap = dfa.classMap;
+        this.table = dfa.table;
+        this.acceptKind = dfa.acceptKind;
+        this.exitChars = dfa.exitChars;
+        this.classCount = dfa.classCount;
+        this.tailClass = dfa.tailClass;
+        this.startState = dfa.startState;
+        this.lazy = dfa instanceof LazyDFA ? (LazyDFA) dfa : null;
+        this.buf = new char[Math.max(16, windowSize)];
+    }
+
+    void enableFailureMemo() {
+        memo = new FailureMemo(acceptKind.length);
+        trail = new int[64];
+    }
+
+    char[] window() { return buf; }
+    long offset(int index) { return base + index; }
+    long position() { return base + pos; }
+    int line() { return line; }
+    String text() { return new String(buf, start, end - start); }
+
+    // Scans to the next token that is not discarded and returns its raw accepted kind;
+    // ERROR for a char no token starts with (skipped by one char), EOF at end of input.
+    int next() throws IOException {
+        FailureMemo memo = this.memo;
+        boolean hooked = stopAt != Long.MAX_VALUE || scanStarts != null || syncPoints != null;
+        for (;;) {
+            if (pos == limit && !fill(pos)) return EOF;
+            long at = base + pos;
+            if (at >= stopAt || (syncPoints != null && at >= syncBase && syncPoints.get((int) (at - syncBase)))) {
+                synced = at < stopAt;
+                stoppedAt = at;
+                return EOF;
+            }
+            if (scanStarts != null) scanStarts.set((int) (at - scanStartsBase));
+            char current = buf[pos];
+            if (current == ' ' || current == '\t' || current == '\r' || current == '\n') {
+                if (!hooked) { pos = skipWhitespace(pos); continue; }
+                if (current == '\n') line++;
+                pos++;
+                continue;
+            }
+            int startPos = pos;
+            int state = startState;
+            int lastAcceptPos = -1;
+            int lastAcceptKind = -1;
+            int i = pos;
+            int trailLength = 0;
+            int stuck = 0; // 1 once a lookup found no transition
+            if (memo != null) memo.forgetBefore(base + pos);
+            for (;;) {
+                if (i == limit) {
+                    long oldBase = base;
+                    boolean more = fill(startPos);
+                    int shift = (int) (base - oldBase);
+                    startPos -= shift;
+                    i -= shift;
+                    if (lastAcceptPos >= 0) lastAcceptPos -= shift;
+                    if (!more) break;
+                }
+                char ch = buf[i];
+                int next = table[state * classCount + (ch < classMap.length ? classMap[ch] : tailClass)];
+                if (next < 0 && (next != LazyDFA.UNKNOWN || (next = lazyStep(state, ch)) < 0)) {
+                    stuck = 1;
+                    break;
+                }
+                i++;
+                // A self-loop stays in this state until some char leaves it; in linear-time mode
+                // a non-accepting run still has to be checked and recorded char by char.
+                if (next == state && (memo == null || acceptKind[state] >= 0))
+                    i = skipSelfLoop(state, i);
+                state = next;
+                if (acceptKind[state] >= 0) {
+                    lastAcceptPos = i;
+                    lastAcceptKind = acceptKind[state];
+                    trailLength = 0;
+                } else if (memo != null) {
+                    // Accepting states never fail, so only the others are looked up and recorded.
+                    if (base + i <= memo.high && memo.contains(state, base + i)) break;
+                    if (trailLength == trail.length) trail = Arrays.copyOf(trail, trailLength * 2);
+                    trail[trailLength++] = state;
+                }
+            }
+            if (trailLength > 0) markFailed(base + (lastAcceptPos >= 0 ? lastAcceptPos : startPos), trailLength);
+            if (base + i > reach) reach = base + i;
+            if (lazy != null) {
+                // Each char scanned was one lookup (a char passed in a self-loop counts as one),
+                // plus the lookup that found no transition; all but the computed ones were hits.
+                lazy.scanned(i - startPos, i - startPos + stuck - lazyMisses);
+                lazyMisses = 0;
+            }
+            tokenLine = line;
+            if (scan != null) {
+                if (lastAcceptKind < 0) scan.error(Math.max(0, i - startPos - 1));
+                else scan.token(lastAcceptKind, lastAcceptPos - startPos, i - lastAcceptPos);
+            }
+            if (lastAcceptKind < 0) {
+                start = startPos;
+                end = pos = startPos + 1;
+                kind = ERROR;
+                return ERROR;
+            }
+            pos = lastAcceptPos;
+            // Discard comments.
+            if (discardKind[lastAcceptKind]) continue;
+            start = startPos;
+            end = lastAcceptPos;
+            kind = lastAcceptKind;
+            return kind;
+        }
+    }
+
+    // Skips the whitespace run at p, counting its newlines; returns the index of the first
+    // other char (or limit).
+    private int skipWhitespace(int p) {
+        int newlines = 0;
+        for (; p < limit; p++) {
+            char c = buf[p];
+            if (c == '\n') newlines++;
+            else if (c != ' ' && c != '\t' && c != '\r') break;
+        }
+        line += newlines;
+        return p;
+    }
+
+    // A step whose table entry is LazyDFA.UNKNOWN: the lazy DFA computes (and caches) it.
+    private int lazyStep(int state, char ch) {
+        lazyMisses++;
+        return lazy.transition(state, ch);
+    }
+
+    // Index of the first char at or after i (or limit) on which state leaves its self-loop.
+    // States that only leave on a few chars search for those instead of looking up classes.
+    private int skipSelfLoop(int state, int i) {
+        char[] exits = exitChars[state];
+        if (exits != null) {
+            for (; i < limit; i++) {
+                char ch = buf[i];
+                for (char exit : exits)
+                    if (ch == exit) return i;
+            }
+            return i;
+        }
+        int row = state * classCount;
+        for (; i < limit; i++) {
+            char ch = buf[i];
+            if (table[row + (ch < classMap.length ? classMap[ch] : tailClass)] != state) break;
+        }
+        return i;
+    }
+
+    // Every trail state failed; the trail starts right after from (the last accepting position
+    // or the scan start).
+    private void markFailed(long from, int trailLength) {
+        for (int k = 0; k < trailLength; k++)
+            memo.add(trail[k], from + 1 + k);
+    }
+
+    // Drops everything before keepFrom, then reads more input behind what is left.
+    // Returns false once the source is exhausted and nothing new was read.
+    private boolean fill(int keepFrom) throws IOException {
+        if (eof) return false;
+        if (keepFrom > 0) {
+            System.arraycopy(buf, keepFrom, buf, 0, limit - keepFrom);
+            limit -= keepFrom;
+            pos -= keepFrom;
+            base += keepFrom;
+        }
+        if (buf.length - limit < 2) // a surrogate pair needs two free slots
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = source.read(buf, limit, buf.length - limit);
+        while (n == 0)
+            n = source.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
@@ -1,6 +1,9 @@
 package lexer;
 
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class ErrorHandler {
@@ -9,8 +12,13 @@ public class ErrorHandler {
         errors.add("Error at line " + line + ": " + errorMessage);
     }
     public boolean hasErrors() { return !errors.isEmpty(); }
+    public void clear() { errors.clear(); }
+    public List<String> errors() { return Collections.unmodifiableList(errors); }
+    // Buffered: System.err flushes on every println, which dominates with many errors.
     public void printErrors() {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.err, System.err.charset()));
         for (String error : errors)
-            System.err.println(error);
+            out.println(error);
+        out.flush();
     }
 }
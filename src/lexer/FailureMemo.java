@@ -0,0 +1,74 @@
+package lexer;
+
+import java.util.Arrays;
+
+// Failed (state, offset) pairs for linear-time maximal munch (Reps, "Maximal-Munch Tokenization
+// in Linear Time", TOPLAS 1998). A pair fails when the DFA, in that state with the char at that
+// absolute offset next, dies or reaches the end of input without passing another accepting
+// state. Every scan marks the states it ran through after its last accepting position, and a
+// later scan that reaches a marked pair stops there as if the DFA had died. Each pair is then
+// run through at most once after it first fails, so scanning costs O(states x chars) even when
+// maximal munch would otherwise rescan the same stretch from every position (e.g. tokens "a"
+// and "a*b" on a long run of a's).
+//
+// Only offsets from the current scan start (floor) on can match again, and marks never reach
+// past the end of the scan that made them, so live offsets span at most one scan. They are kept
+// in a ring indexed by offset: each slot holds the offset that owns it and a bitset of failed
+// states. A slot whose owner is older than floor is stale and is cleared when reused. Unlike a
+// hash set this has no collisions to provoke, and consecutive offsets are adjacent in memory.
+final class FailureMemo {
+    private final int words;     // longs per bitset
+    private int mask;            // ring capacity - 1
+    private long[] owner;        // offset owning each slot, -1 if none
+    private long[] bits;         // capacity * words
+    private long floor;          // offsets before this are stale
+    long high = -1;              // highest offset marked so far; nothing past it is memoized
+
+    FailureMemo(int stateCount) {
+        this.words = (stateCount + 63) >>> 6;
+        allocate(256);
+    }
+
+    private void allocate(int capacity) {
+        mask = capacity - 1;
+        owner = new long[capacity];
+        Arrays.fill(owner, -1);
+        bits = new long[capacity * words];
+    }
+
+    boolean contains(int state, long offset) {
+        int slot = (int) offset & mask;
+        return owner[slot] == offset && (bits[slot * words + (state >>> 6)] & (1L << state)) != 0;
+    }
+
+    void add(int state, long offset) {
+        if (offset - floor > mask) grow(offset - floor + 1);
+        int slot = (int) offset & mask;
+        if (owner[slot] != offset) {
+            owner[slot] = offset;
+            Arrays.fill(bits, slot * words, slot * words + words, 0);
+        }
+        bits[slot * words + (state >>> 6)] |= 1L << state;
+        if (offset > high) high = offset;
+    }
+
+    // Called at each scan start: offsets before it are no longer needed.
+    void forgetBefore(long offset) {
+        floor = offset;
+    }
+
+    // Widens the ring to cover span offsets, keeping the live slots.
+    private void grow(long span) {
+        long[] oldOwner = owner, oldBits = bits;
+        int capacity = owner.length;
+        while (capacity < span) capacity *= 2;
+        allocate(capacity);
+        for (int slot = 0; slot < oldOwner.length; slot++) {
+            long offset = oldOwner[slot];
+            if (offset < floor) continue;
+            int to = (int) offset & mask;
+            owner[to] = offset;
+            System.arraycopy(oldBits, slot * words, bits, to * words, words);
+        }
+    }
+}
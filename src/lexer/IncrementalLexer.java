@@ -0,0 +1,447 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.*;
+import token.Token;
+import token.TokenBuffer;
+
+// Incremental lexing for editors: holds a document with its tokens, errors and symbols, and
+// re-lexes only what an edit can affect.
+//
+// Every token remembers the furthest char its scan (and the discarded or failed scans just
+// before it) examined. An edit re-lexes from the end of the last token whose scans stayed
+// short of the edit, and stops as soon as the new stream begins a token exactly where an old
+// token began past the edit: scanning from the same position over the same text is
+// deterministic, so from there on the old tokens are kept with their offsets and lines shifted.
+//
+// The text, tokens and errors live in gap buffers positioned at the last edit (see Rows), so an
+// edit only touches what lies between the previous edit and the re-lexed range. Each
+// identifier's occurrences are split at the same gap (see Name), so its last occurrence is
+// known without looking at the rest of the document. Errors are tracked here and copied to the
+// lexer's ErrorHandler by reportErrors(). The lexer's SymbolTable holds one entry per identifier,
+// whose line it reads from here (the line of the last occurrence, however edits have shifted
+// it); reportSymbols() adds the identifiers edits brought in and removes those they took out.
+public class IncrementalLexer {
+    private static final int WINDOW = 1 << 12;
+    private static final int KIND = 0, START = 1, LENGTH = 2, LINE = 3, REACH = 4, SYMBOL = 5; // token columns
+    private static final int POS = 0, ERROR_LINE = 1;                                            // error columns
+
+    private final LexicalAnalyzer lexer;
+    private final Text text = new Text();
+    private int endLine = 1;  // line number after the last scan start
+    private final Rows tokens = new Rows(Rows.PLAIN, Rows.OFFSET, Rows.PLAIN, Rows.LINE, Rows.OFFSET, Rows.PLAIN);
+    private final Rows errors = new Rows(Rows.OFFSET, Rows.LINE);
+    // Tokens per lookahead (reach - end) bucket of powers of two; bounds how far back an edit
+    // can reach.
+    private final int[] lookaheads = new int[33];
+    // Identifiers by name and by SYMBOL column value (-1 for other tokens). A name whose
+    // occurrences are all gone stays, with none, until reportSymbols() takes it out of the table
+    // and frees its id for reuse (freeIds, a stack).
+    private final Map<String, Name> symbols = new HashMap<>();
+    private final List<Name> names = new ArrayList<>();
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    // Names whose occurrence count edits changed since the last reportSymbols().
+    private final List<Name> changed = new ArrayList<>();
+
+    // Parallel int columns kept as a gap buffer. Rows before the gap hold absolute values; rows
+    // after it hold offsets relative to the end of the text and lines relative to endLine, so
+    // rows past an edit stay valid without being touched.
+    private final class Rows {
+        static final int PLAIN = 0, OFFSET = 1, LINE = 2;
+
+        final int[] roles;
+        int[][] columns;
+        int gapStart, gapEnd;
+
+        Rows(int... roles) {
+            this.roles = roles;
+            this.columns = new int[roles.length][256];
+            this.gapEnd = 256;
+        }
+
+        int size() { return gapStart + columns[0].length - gapEnd; }
+        boolean hasAfterGap() { return gapEnd < columns[0].length; }
+
+        int get(int column, int row) {
+            return row < gapStart ? columns[column][row] : columns[column][row + gapEnd - gapStart] + base(column);
+        }
+
+        // Absolute value of the first row after the gap.
+        int afterGap(int column) { return columns[column][gapEnd] + base(column); }
+        void setAfterGap(int column, int value) { columns[column][gapEnd] = value - base(column); }
+        void dropAfterGap() { gapEnd++; }
+
+        // Appends a row at the gap; the caller fills columns[c][slot] with absolute values.
+        int append() {
+            if (gapStart == gapEnd) {
+                int capacity = columns[0].length * 2, tail = columns[0].length - gapEnd;
+                for (int c = 0; c < columns.length; c++) {
+                    int[] grown = Arrays.copyOf(columns[c], capacity);
+                    System.arraycopy(columns[c], gapEnd, grown, capacity - tail, tail);
+                    columns[c] = grown;
+                }
+                gapEnd = capacity - tail;
+            }
+            return gapStart++;
+        }
+
+        void moveGap(int row) {
+            while (gapStart > row) {
+                gapStart--;
+                gapEnd--;
+                for (int c = 0; c < columns.length; c++)
+                    columns[c][gapEnd] = columns[c][gapStart] - base(c);
+            }
+            while (gapStart < row) {
+                for (int c = 0; c < columns.length; c++)
+                    columns[c][gapStart] = columns[c][gapEnd] + base(c);
+                gapStart++;
+                gapEnd++;
+            }
+        }
+
+        // First row whose column value is >= value (the column must be sorted).
+        int search(int column, int value) {
+            int lo = 0, hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (get(column, mid) < value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private int base(int column) {
+            return roles[column] == OFFSET ? text.length() : roles[column] == LINE ? endLine : 0;
+        }
+    }
+
+    // The document as a gap buffer of chars; the gap follows the edits.
+    private static final class Text implements CharSequence {
+        private char[] chars = new char[1024];
+        private int gapStart, gapEnd = 1024;
+
+        @Override
+        public int length() { return chars.length - gapEnd + gapStart; }
+
+        @Override
+        public char charAt(int i) { return chars[i < gapStart ? i : i + gapEnd - gapStart]; }
+
+        @Override
+        public CharSequence subSequence(int start, int end) { return substring(start, end); }
+
+        @Override
+        public String toString() { return substring(0, length()); }
+
+        String substring(int start, int end) {
+            char[] out = new char[end - start];
+            getChars(start, end, out, 0);
+            return new String(out);
+        }
+
+        void getChars(int start, int end, char[] dst, int dstBegin) {
+            if (start < gapStart) {
+                int n = Math.min(end, gapStart) - start;
+                System.arraycopy(chars, start, dst, dstBegin, n);
+                start += n;
+                dstBegin += n;
+            }
+            if (start < end)
+                System.arraycopy(chars, start + gapEnd - gapStart, dst, dstBegin, end - start);
+        }
+
+        void replace(int start, int end, String inserted) {
+            if (end <= gapStart) {
+                System.arraycopy(chars, end, chars, gapEnd - (gapStart - end), gapStart - end);
+                gapEnd -= gapStart - end;
+            } else if (start >= gapStart) {
+                System.arraycopy(chars, gapEnd, chars, gapStart, start - gapStart);
+                gapEnd += end - gapStart;
+            } else { // the gap lies inside the removed range
+                gapEnd += end - gapStart;
+            }
+            gapStart = start;
+            if (gapEnd - gapStart < inserted.length()) {
+                int tail = chars.length - gapEnd;
+                char[] grown = new char[Math.max(chars.length * 2, length() + inserted.length() + 1024)];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                chars = grown;
+                gapEnd = grown.length - tail;
+            }
+            inserted.getChars(0, inserted.length(), chars, gapStart);
+            gapStart += inserted.length();
+        }
+    }
+
+    // Lines of an identifier's occurrences, split at the token gap like the token rows: those
+    // before it in document order and absolute, those after it nearest first and relative to
+    // endLine. A token crossing the gap moves the occurrence nearest the gap from one stack to
+    // the other, so the last occurrence is always the far end of after (or the top of before).
+    private final class Name {
+        final String lexeme;
+        final int id;
+        int[] before = new int[4], after = new int[4];
+        int beforeCount, afterCount;
+        boolean reported; // bound in the lexer's symbol table
+        boolean changed;  // in the changed list
+        int goneLine;     // line of the last occurrence once there are none
+
+        Name(String lexeme, int id) {
+            this.lexeme = lexeme;
+            this.id = id;
+        }
+
+        int count() { return beforeCount + afterCount; }
+
+        int lastLine() {
+            if (afterCount > 0) return after[0] + endLine;
+            return beforeCount > 0 ? before[beforeCount - 1] : goneLine;
+        }
+
+        void markChanged() {
+            if (changed) return;
+            changed = true;
+            IncrementalLexer.this.changed.add(this);
+        }
+
+        void pushBefore(int line) {
+            if (beforeCount == before.length) before = Arrays.copyOf(before, beforeCount * 2);
+            before[beforeCount++] = line;
+        }
+
+        void pushAfter(int line) {
+            if (afterCount == after.length) after = Arrays.copyOf(after, afterCount * 2);
+            after[afterCount++] = line - endLine;
+        }
+    }
+
+    // Token range an edit replaced: removedTokens old tokens from firstToken on became insertedTokens new ones.
+    public static final class Change {
+        public final int firstToken, removedTokens, insertedTokens;
+
+        Change(int firstToken, int removedTokens, int insertedTokens) {
+            this.firstToken = firstToken;
+            this.removedTokens = removedTokens;
+            this.insertedTokens = insertedTokens;
+        }
+    }
+
+    IncrementalLexer(LexicalAnalyzer lexer, String source) {
+        this.lexer = lexer;
+        lexer.symbolTable.liveLines = id -> names.get(id).lastLine();
+        edit(0, 0, source);
+        reportErrors();
+        reportSymbols();
+    }
+
+    public String text() { return text.toString(); }
+    public int size() { return tokens.size(); }
+    public int kind(int i) { return tokens.get(KIND, i); }
+    public int start(int i) { return tokens.get(START, i); }
+    public int length(int i) { return tokens.get(LENGTH, i); }
+    public int line(int i) { return tokens.get(LINE, i); }
+    public String typeName(int i) { return lexer.typeNames[kind(i)]; }
+    public int errorCount() { return errors.size(); }
+    public int errorOffset(int e) { return errors.get(POS, e); }
+    public int errorLine(int e) { return errors.get(ERROR_LINE, e); }
+
+    public Token toToken(int i) {
+        int start = start(i);
+        return new Token(typeName(i), text.substring(start, start + length(i)), line(i));
+    }
+
+    // Snapshot of the current tokens.
+    public TokenBuffer tokens() {
+        TokenBuffer buffer = new TokenBuffer(text.toString(), lexer.typeNames);
+        for (int i = 0; i < size(); i++)
+            buffer.add(kind(i), start(i), length(i), line(i));
+        return buffer;
+    }
+
+    // Replaces the contents of the lexer's ErrorHandler with the errors of the current text.
+    public void reportErrors() {
+        lexer.errorHandler.clear();
+        for (int e = 0; e < errorCount(); e++)
+            lexer.reportError(text.charAt(errorOffset(e)), errorLine(e));
+    }
+
+    // Brings the lexer's SymbolTable up to date with the edits since the last call: identifiers
+    // they brought in are bound (in the order they appeared), identifiers they took out are
+    // removed and forgotten. Only names whose count the edits changed are looked at.
+    public void reportSymbols() {
+        SymbolTable table = lexer.symbolTable;
+        for (Name name : changed) {
+            name.changed = false;
+            if (name.count() > 0) {
+                if (!name.reported)
+                    table.bindLive(table.local(name.lexeme), lexer.typeNames[lexer.identifierKind], name.id);
+                name.reported = true;
+                continue;
+            }
+            if (name.reported) table.removeSymbol(name.lexeme);
+            symbols.remove(name.lexeme);
+            names.set(name.id, null);
+            if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            freeIds[freeCount++] = name.id;
+        }
+        changed.clear();
+    }
+
+    // Replaces removed chars at offset with inserted and re-lexes the affected range.
+    public Change edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length())
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside text of length " + text.length());
+        // Keep tokens whose scans (and all scans before them) ended before the edit.
+        int keep = tokens.search(START, offset);
+        int lookahead = maxLookahead();
+        for (int t = keep - 1; t >= 0 && start(t) + length(t) + lookahead >= offset; t--)
+            if (tokens.get(REACH, t) >= offset) keep = t;
+        moveTokenGap(keep);
+        int from = keep == 0 ? 0 : start(keep - 1) + length(keep - 1);
+        int fromLine = keep == 0 ? 1 : line(keep - 1);
+        errors.moveGap(errors.search(POS, from));
+
+        text.replace(offset, offset + removed, inserted);
+        int editEnd = offset + inserted.length();
+        // From here on, rows after the gaps read as positions in the new text.
+
+        int removedTokens = 0, resyncAt = -1, lineShift = 0;
+        DFAScanner scanner = lexer.attach(new DFAScanner(lexer.dfa, lexer.discardKind, readerFrom(from), WINDOW, from, fromLine));
+        try {
+            for (int kind; (kind = scanner.next()) != DFAScanner.EOF; ) {
+                int at = (int) scanner.offset(scanner.start);
+                if (kind == DFAScanner.ERROR) {
+                    int slot = errors.append();
+                    errors.columns[POS][slot] = at;
+                    errors.columns[ERROR_LINE][slot] = scanner.tokenLine;
+                    continue;
+                }
+                if (at >= editEnd) {
+                    // Drop old tokens the new stream has passed; stop at one starting right here.
+                    while (tokens.hasAfterGap() && tokens.afterGap(START) < at) {
+                        dropOldToken();
+                        removedTokens++;
+                    }
+                    if (tokens.hasAfterGap() && tokens.afterGap(START) == at) {
+                        resyncAt = at;
+                        lineShift = scanner.tokenLine - tokens.afterGap(LINE);
+                        int end = at + tokens.afterGap(LENGTH), reach = tokens.afterGap(REACH);
+                        countLookahead(reach - end, -1);
+                        reach = Math.max(reach, (int) scanner.reach);
+                        countLookahead(reach - end, 1);
+                        tokens.setAfterGap(REACH, reach);
+                        break;
+                    }
+                }
+                int symbol = -1;
+                if (kind == lexer.identifierKind) {
+                    String lexeme = scanner.text();
+                    kind = lexer.determineTokenKind(kind, lexeme);
+                    if (kind == lexer.identifierKind) {
+                        Name name = symbols.computeIfAbsent(lexeme, this::newName);
+                        name.pushBefore(scanner.tokenLine);
+                        name.markChanged();
+                        symbol = name.id;
+                    }
+                }
+                int slot = tokens.append();
+                tokens.columns[KIND][slot] = kind;
+                tokens.columns[START][slot] = at;
+                tokens.columns[LENGTH][slot] = scanner.end - scanner.start;
+                tokens.columns[LINE][slot] = scanner.tokenLine;
+                tokens.columns[REACH][slot] = (int) scanner.reach;
+                tokens.columns[SYMBOL][slot] = symbol;
+                countLookahead((int) scanner.reach - at - (scanner.end - scanner.start), 1);
+                scanner.reach = -1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // readerFrom does not fail
+        }
+        lexer.finish(scanner, from);
+        if (resyncAt < 0) {
+            while (tokens.hasAfterGap()) {
+                dropOldToken();
+                removedTokens++;
+            }
+        }
+        // Old errors of the re-lexed range read as positions before the resync point.
+        while (errors.hasAfterGap() && (resyncAt < 0 || errors.afterGap(POS) < resyncAt))
+            errors.dropAfterGap();
+        if (resyncAt < 0) endLine = scanner.line();
+        else endLine += lineShift;
+        return new Change(keep, removedTokens, tokens.gapStart - keep);
+    }
+
+    private int maxLookahead() {
+        for (int b = lookaheads.length - 1; b > 0; b--)
+            if (lookaheads[b] > 0) return (int) ((1L << b) - 1);
+        return 0;
+    }
+
+    private void countLookahead(int lookahead, int count) {
+        lookaheads[32 - Integer.numberOfLeadingZeros(lookahead)] += count;
+    }
+
+    // Moves the token gap to row, carrying the occurrences of the identifiers it passes over.
+    private void moveTokenGap(int row) {
+        for (int r = tokens.gapStart - 1; r >= row; r--) {
+            int symbol = tokens.columns[SYMBOL][r];
+            if (symbol < 0) continue;
+            Name name = names.get(symbol);
+            name.pushAfter(name.before[--name.beforeCount]);
+        }
+        for (int r = tokens.gapEnd; r < tokens.gapEnd + row - tokens.gapStart; r++) {
+            int symbol = tokens.columns[SYMBOL][r];
+            if (symbol < 0) continue;
+            Name name = names.get(symbol);
+            name.pushBefore(name.after[--name.afterCount] + endLine);
+        }
+        tokens.moveGap(row);
+    }
+
+    // Removes the first token after the gap, and its occurrence if it is an identifier.
+    private void dropOldToken() {
+        countLookahead(tokens.afterGap(REACH) - tokens.afterGap(START) - tokens.afterGap(LENGTH), -1);
+        int symbol = tokens.afterGap(SYMBOL);
+        if (symbol >= 0) {
+            Name name = names.get(symbol);
+            if (name.count() == 1) name.goneLine = name.lastLine();
+            name.afterCount--;
+            name.markChanged();
+        }
+        tokens.dropAfterGap();
+    }
+
+    private Name newName(String lexeme) {
+        if (freeCount > 0) {
+            Name name = new Name(lexeme, freeIds[--freeCount]);
+            names.set(name.id, name);
+            return name;
+        }
+        Name name = new Name(lexeme, names.size());
+        names.add(name);
+        return name;
+    }
+
+    private Reader readerFrom(int offset) {
+        return new Reader() {
+            private int pos = offset;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (pos >= text.length()) return -1;
+                int n = Math.min(len, text.length() - pos);
+                text.getChars(pos, pos + n, cbuf, off);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+}
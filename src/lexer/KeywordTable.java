@@ -0,0 +1,114 @@
+package lexer;
+
+import java.util.*;
+
+// Perfect hash of a fixed word set, for telling keywords from identifiers on the token's chars
+// with no String and no hash over the whole token. Built like gperf output: the key of a span is
+// its length and the chars at a few positions (counted from the start, or from the end when
+// negative), picked so that no two words share a key, and a multiplier is searched for that
+// sends every word's key to its own slot. A lookup is one key, one slot and one compare.
+final class KeywordTable {
+    private final String[] words;   // by slot, null for empty slots
+    private final int[] positions;  // sampled chars; -1 is the last char
+    private final int multiplier;
+    private final int shift;
+    private final int minLength;
+    private final int maxLength;
+
+    private KeywordTable(String[] words, int[] positions, int multiplier, int shift, int minLength, int maxLength) {
+        this.words = words;
+        this.positions = positions;
+        this.multiplier = multiplier;
+        this.shift = shift;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    static KeywordTable of(Collection<String> wordSet) {
+        List<String> list = new ArrayList<>(new TreeSet<>(wordSet));
+        if (list.isEmpty()) throw new IllegalArgumentException("No words");
+        int minLength = Integer.MAX_VALUE, maxLength = 0;
+        for (String word : list) {
+            minLength = Math.min(minLength, word.length());
+            maxLength = Math.max(maxLength, word.length());
+        }
+        // Sample 0, -1, 1, -2, ... until the keys tell the words apart.
+        List<Integer> sampled = new ArrayList<>();
+        int[] keys = keys(list, sampled);
+        for (int p = 0; distinctCount(keys) < list.size(); p++) {
+            if (p == 2 * maxLength) throw new IllegalStateException("Cannot tell the words apart: " + list);
+            sampled.add(p % 2 == 0 ? p / 2 : -(p + 1) / 2);
+            keys = keys(list, sampled);
+        }
+        int[] positions = sampled.stream().mapToInt(Integer::intValue).toArray();
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, list.size() - 1));
+        Random random = new Random(list.hashCode());
+        for (; bits <= 20; bits++) {
+            int shift = 32 - bits;
+            for (int attempt = 0; attempt < 4096; attempt++) {
+                int multiplier = random.nextInt() | 1;
+                String[] slots = new String[1 << bits];
+                boolean perfect = true;
+                for (int w = 0; w < list.size() && perfect; w++) {
+                    int slot = (keys[w] * multiplier) >>> shift;
+                    if (slots[slot] != null) perfect = false;
+                    else slots[slot] = list.get(w);
+                }
+                if (perfect) return new KeywordTable(slots, positions, multiplier, shift, minLength, maxLength);
+            }
+        }
+        throw new IllegalStateException("No perfect hash found for " + list);
+    }
+
+    boolean contains(char[] buf, int start, int end) {
+        int length = end - start;
+        if (length < minLength || length > maxLength) return false;
+        int key = length;
+        for (int p : positions) {
+            int at = p >= 0 ? p : length + p;
+            key = 31 * key + (at >= 0 && at < length ? buf[start + at] : 0);
+        }
+        String word = words[(key * multiplier) >>> shift];
+        return word != null && SymbolInterner.matches(word, buf, start, end);
+    }
+
+    boolean contains(String s) {
+        int length = s.length();
+        if (length < minLength || length > maxLength) return false;
+        int key = length;
+        for (int p : positions) {
+            int at = p >= 0 ? p : length + p;
+            key = 31 * key + (at >= 0 && at < length ? s.charAt(at) : 0);
+        }
+        return s.equals(words[(key * multiplier) >>> shift]);
+    }
+
+    // The words, in slot order.
+    List<String> words() {
+        List<String> list = new ArrayList<>();
+        for (String word : words) if (word != null) list.add(word);
+        return list;
+    }
+
+    int slotCount() { return words.length; }
+
+    private static int[] keys(List<String> list, List<Integer> positions) {
+        int[] keys = new int[list.size()];
+        for (int w = 0; w < keys.length; w++) {
+            String word = list.get(w);
+            int key = word.length();
+            for (int p : positions) {
+                int at = p >= 0 ? p : word.length() + p;
+                key = 31 * key + (at >= 0 && at < word.length() ? word.charAt(at) : 0);
+            }
+            keys[w] = key;
+        }
+        return keys;
+    }
+
+    private static int distinctCount(int[] keys) {
+        Set<Integer> distinct = new HashSet<>();
+        for (int key : keys) distinct.add(key);
+        return distinct.size();
+    }
+}
@@ -0,0 +1,335 @@
+package lexer;
+
+import java.util.*;
+import automata.CompiledDFA;
+
+// Generates the Java source of a standalone lexer class for a compiled DFA, in the style of
+// JFlex/re2c. The generated class depends on nothing but java.base and behaves like
+// LexicalAnalyzer over the same DFA: maximal munch, whitespace and comments skipped, identifiers
+// checked against the keywords, the same line numbers and error messages. It does not keep a
+// symbol table. Token kinds are the spec's kinds, and TOKEN_TYPES holds the reported type per kind.
+//
+// Two shapes of match loop:
+//   switch  one case per DFA state, testing char ranges directly (or switching on the char
+//           class when a state has many ranges). A state that loops back to itself runs its
+//           loop in place. Accepting states record the match without a table lookup.
+//   table   the CompiledDFA table itself, packed into string constants.
+// generate picks the switch shape unless its match method would come near 8000 bytes of bytecode,
+// past which HotSpot does not compile a method at all (see estimatedSwitchSize).
+public class LexerGenerator {
+    static final int SWITCH_SIZE_LIMIT = 7000;
+    private static final int MAX_RANGE_TESTS = 6; // per state, before dispatching on the char class instead
+    private static final int CHUNK = 16 * 1024; // chars per string constant, safely below the 64 KB UTF-8 limit
+
+    public static String generate(CompiledDFA dfa, String packageName, String className) {
+        return generate(dfa, packageName, className, estimatedSwitchSize(dfa) > SWITCH_SIZE_LIMIT);
+    }
+
+    public static String generate(CompiledDFA dfa, String packageName, String className, boolean tableDriven) {
+        if (dfa.stateCount >= Character.MAX_VALUE)
+            throw new IllegalArgumentException("Too many DFA states to pack: " + dfa.stateCount);
+        LexicalAnalyzer rules = new LexicalAnalyzer(dfa, new ErrorHandler(), new SymbolTable());
+        StringBuilder out = new StringBuilder(1 << 16);
+        out.append("// Generated by lexer.LexerGenerator (").append(tableDriven ? "table" : "switch").append(" style, ")
+           .append(dfa.stateCount).append(" DFA states, ").append(dfa.classCount).append(" char classes). Do not edit.\n");
+        out.append("// Same tokens, lines and errors as lexer.LexicalAnalyzer over the same spec; kinds index TOKEN_TYPES.\n");
+        if (packageName != null && !packageName.isEmpty())
+            out.append("package ").append(packageName).append(";\n\n");
+        out.append("import java.util.ArrayList;\n");
+        out.append("import java.util.List;\n\n");
+        out.append("public final class ").append(className).append(" {\n");
+        out.append("    public static final int EOF = -1;\n");
+        out.append("    public static final String[] TOKEN_TYPES = {");
+        for (int kind = 0; kind < rules.typeNames.length; kind++)
+            out.append(kind == 0 ? " " : ", ").append(javaString(rules.typeNames[kind]));
+        out.append(" };\n\n");
+
+        out.append("    private static final int MAP_LENGTH = ").append(dfa.classMap.length).append(";\n");
+        out.append("    private static final int TAIL_CLASS = ").append(dfa.tailClass).append(";\n");
+        out.append("    private static final char[] CLASS_MAP = unpack(").append(packed(dfa.classMap)).append(");\n");
+        if (tableDriven) {
+            char[] table = new char[dfa.table.length], accept = new char[dfa.stateCount];
+            for (int t = 0; t < table.length; t++) table[t] = (char) (dfa.table[t] + 1);
+            for (int s = 0; s < accept.length; s++) accept[s] = (char) (dfa.acceptKind[s] + 1);
+            out.append("    private static final int CLASSES = ").append(dfa.classCount).append(";\n");
+            out.append("    // Target state + 1 per (state, class), 0 for none; accepted kind + 1 per state, 0 for none.\n");
+            out.append("    private static final char[] TABLE = unpack(").append(packed(table)).append(");\n");
+            out.append("    private static final char[] ACCEPT = unpack(").append(packed(accept)).append(");\n");
+        }
+        out.append('\n');
+
+        out.append("    private final char[] in;\n");
+        out.append("    private final int n;\n");
+        out.append("    private int pos, line = 1;\n");
+        out.append("    private int start, end, tokenLine;\n");
+        out.append("    private int matchEnd;\n");
+        out.append("    private final List<String> errors = new ArrayList<>();\n\n");
+        out.append("    public ").append(className).append("(String source) {\n");
+        out.append("        in = source.toCharArray();\n");
+        out.append("        n = in.length;\n");
+        out.append("    }\n\n");
+        out.append("    // Current token, valid after next() returned a kind.\n");
+        out.append("    public int start() { return start; }\n");
+        out.append("    public int length() { return end - start; }\n");
+        out.append("    public int line() { return tokenLine; }\n");
+        out.append("    public String text() { return new String(in, start, end - start); }\n");
+        out.append("    public List<String> errors() { return errors; }\n\n");
+
+        out.append("    // Lexes up to kinds.length further tokens into the arrays; returns how many (0 at the end).\n");
+        out.append("    public int fill(int[] kinds, int[] starts, int[] lengths, int[] lines) {\n");
+        out.append("        int count = 0;\n");
+        out.append("        for (int kind; count < kinds.length && (kind = next()) != EOF; count++) {\n");
+        out.append("            kinds[count] = kind;\n");
+        out.append("            starts[count] = start;\n");
+        out.append("            lengths[count] = end - start;\n");
+        out.append("            lines[count] = tokenLine;\n");
+        out.append("        }\n");
+        out.append("        return count;\n");
+        out.append("    }\n\n");
+
+        out.append("    // Kind of the next token, or EOF.\n");
+        out.append("    public int next() {\n");
+        out.append("        for (;;) {\n");
+        out.append("            if (pos >= n) return EOF;\n");
+        out.append("            char c = in[pos];\n");
+        out.append("            if (c == ' ' || c == '\\t' || c == '\\r') { pos++; continue; }\n");
+        out.append("            if (c == '\\n') { line++; pos++; continue; }\n");
+        out.append("            int kind = match(pos);\n");
+        out.append("            if (kind < 0) {\n");
+        out.append("                errors.add(\"Error at line \" + line + \": Unrecognized token starting with '\" + c + \"'\");\n");
+        out.append("                pos++;\n");
+        out.append("                continue;\n");
+        out.append("            }\n");
+        List<Integer> discarded = new ArrayList<>();
+        for (int kind = 0; kind < rules.discardKind.length; kind++)
+            if (rules.discardKind[kind]) discarded.add(kind);
+        if (!discarded.isEmpty()) {
+            out.append("            if (");
+            for (int d = 0; d < discarded.size(); d++)
+                out.append(d == 0 ? "" : " || ").append("kind == ").append(discarded.get(d));
+            out.append(") { pos = matchEnd; continue; }\n");
+        }
+        out.append("            start = pos;\n");
+        out.append("            end = pos = matchEnd;\n");
+        out.append("            tokenLine = line;\n");
+        // Keywords the DFA already accepts as KEYWORD need no check (see LexicalAnalyzer.keywordTable).
+        List<String> keywords = rules.keywordTable != null ? rules.keywordTable.words() : List.of();
+        if (!keywords.isEmpty())
+            out.append("            if (kind == ").append(rules.identifierKind).append(" && isKeyword(start, end - start)) kind = ")
+               .append(rules.keywordKind).append(";\n");
+        out.append("            return kind;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+
+        if (tableDriven) writeTableMatch(out);
+        else writeSwitchMatch(dfa, out);
+
+        if (!keywords.isEmpty())
+            writeKeywords(keywords, out);
+
+        out.append("    private static char[] unpack(String... parts) {\n");
+        out.append("        StringBuilder sb = new StringBuilder();\n");
+        out.append("        for (String part : parts) sb.append(part);\n");
+        out.append("        return sb.toString().toCharArray();\n");
+        out.append("    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private static void writeTableMatch(StringBuilder out) {
+        out.append("    // Longest token at from: returns its kind and sets matchEnd, or -1 if none starts here.\n");
+        out.append("    private int match(int from) {\n");
+        out.append("        int i = from, state = 0, lastKind = -1;\n");
+        out.append("        while (i < n) {\n");
+        out.append("            char ch = in[i];\n");
+        out.append("            int next = TABLE[state * CLASSES + (ch < MAP_LENGTH ? CLASS_MAP[ch] : TAIL_CLASS)] - 1;\n");
+        out.append("            if (next < 0) break;\n");
+        out.append("            state = next;\n");
+        out.append("            i++;\n");
+        out.append("            if (ACCEPT[state] != 0) { lastKind = ACCEPT[state] - 1; matchEnd = i; }\n");
+        out.append("        }\n");
+        out.append("        return lastKind;\n");
+        out.append("    }\n\n");
+    }
+
+    private static void writeSwitchMatch(CompiledDFA dfa, StringBuilder out) {
+        out.append("    // Longest token at from: returns its kind and sets matchEnd, or -1 if none starts here.\n");
+        out.append("    private int match(int from) {\n");
+        out.append("        int i = from, state = 0, lastKind = -1;\n");
+        out.append("        char ch;\n");
+        out.append("        scan:\n");
+        out.append("        for (;;) {\n");
+        out.append("            switch (state) {\n");
+        for (int s = 0; s < dfa.stateCount; s++) {
+            List<int[]> loop = new ArrayList<>(), exits = new ArrayList<>();
+            for (int[] range : ranges(dfa, s))
+                (range[2] == s ? loop : exits).add(range);
+            out.append("                case ").append(s).append(":\n");
+            if (!loop.isEmpty()) {
+                // Self-loop: stay in the state without going back through the dispatch.
+                out.append("                    for (; i < n; i++) {\n");
+                out.append("                        ch = in[i];\n");
+                out.append("                        if (!(").append(condition(loop)).append(")) break;\n");
+                out.append("                    }\n");
+            }
+            if (dfa.acceptKind[s] >= 0) {
+                // The interpreter only accepts after a transition, so an accepting start state
+                // counts only once the DFA came back to it.
+                String record = "lastKind = " + dfa.acceptKind[s] + "; matchEnd = i;";
+                if (s == dfa.startState) out.append("                    if (i > from) { ").append(record).append(" }\n");
+                else out.append("                    ").append(record).append('\n');
+            }
+            if (exits.isEmpty()) {
+                out.append("                    break scan;\n");
+                continue;
+            }
+            out.append("                    if (i == n) break scan;\n");
+            out.append("                    ch = in[i];\n");
+            // Ranges grouped by target, in order of first appearance.
+            Map<Integer, List<int[]>> byTarget = new LinkedHashMap<>();
+            for (int[] range : exits)
+                byTarget.computeIfAbsent(range[2], t -> new ArrayList<>()).add(range);
+            if (exits.size() <= MAX_RANGE_TESTS) {
+                String keyword = "if";
+                for (Map.Entry<Integer, List<int[]>> e : byTarget.entrySet()) {
+                    out.append("                    ").append(keyword).append(" (").append(condition(e.getValue()))
+                       .append(") state = ").append(e.getKey()).append(";\n");
+                    keyword = "else if";
+                }
+                out.append("                    else break scan;\n");
+            } else {
+                // Many ranges: dispatch on the char class instead.
+                out.append("                    switch (ch < MAP_LENGTH ? CLASS_MAP[ch] : TAIL_CLASS) {\n");
+                for (Map.Entry<Integer, List<int[]>> e : byTarget.entrySet())
+                    out.append("                        ").append(caseLabels(dfa, e.getValue())).append(" state = ").append(e.getKey()).append("; break;\n");
+                out.append("                        default: break scan;\n");
+                out.append("                    }\n");
+            }
+            out.append("                    i++;\n");
+            out.append("                    continue scan;\n");
+        }
+        out.append("                default:\n");
+        out.append("                    throw new IllegalStateException(\"No DFA state \" + state);\n");
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("        return lastKind;\n");
+        out.append("    }\n\n");
+    }
+
+    // Rough bytecode size of the switch-style match method, erring on the large side (81 MyLang
+    // states: estimated 6.4 KB, actual 5.4 KB).
+    static int estimatedSwitchSize(CompiledDFA dfa) {
+        int size = 40 + 4 * dfa.stateCount; // the state dispatch
+        for (int s = 0; s < dfa.stateCount; s++) {
+            size += 20;
+            if (dfa.acceptKind[s] >= 0) size += 12;
+            Set<Integer> targets = new HashSet<>();
+            int loopRanges = 0, exitRanges = 0;
+            for (int[] range : ranges(dfa, s)) {
+                if (range[2] == s) loopRanges++;
+                else { exitRanges++; targets.add(range[2]); }
+            }
+            if (loopRanges > 0) size += 20 + 14 * loopRanges;
+            if (exitRanges <= MAX_RANGE_TESTS) size += 14 * exitRanges + 8 * targets.size();
+            else size += 40 + 4 * dfa.classCount + 8 * targets.size();
+        }
+        return size;
+    }
+
+    // Maximal char ranges {lo, hi, target} on which state has a transition, in char order.
+    private static List<int[]> ranges(CompiledDFA dfa, int state) {
+        List<int[]> ranges = new ArrayList<>();
+        int row = state * dfa.classCount, mapLength = dfa.classMap.length;
+        for (int c = 0; c <= mapLength; c++) {
+            // c == mapLength stands for the tail, every char from mapLength on.
+            int hi = c < mapLength ? c : Character.MAX_VALUE;
+            int target = dfa.table[row + (c < mapLength ? dfa.classMap[c] : dfa.tailClass)];
+            if (target < 0) continue;
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[2] == target && last[1] == c - 1) last[1] = hi;
+            else ranges.add(new int[] { c, hi, target });
+        }
+        return ranges;
+    }
+
+    private static String condition(List<int[]> ranges) {
+        StringBuilder sb = new StringBuilder();
+        for (int[] range : ranges) {
+            if (sb.length() > 0) sb.append(" || ");
+            if (range[0] == range[1]) sb.append("ch == ").append(charLiteral(range[0]));
+            else if (range[1] == Character.MAX_VALUE) sb.append("ch >= ").append(charLiteral(range[0]));
+            else if (range[0] == 0) sb.append("ch <= ").append(charLiteral(range[1]));
+            else sb.append("ch >= ").append(charLiteral(range[0])).append(" && ch <= ").append(charLiteral(range[1]));
+        }
+        return sb.toString();
+    }
+
+    // Case labels for the classes of the chars in ranges.
+    private static String caseLabels(CompiledDFA dfa, List<int[]> ranges) {
+        Set<Integer> classes = new TreeSet<>();
+        for (int[] range : ranges)
+            for (int c = range[0]; c <= range[1]; c++) {
+                if (c >= dfa.classMap.length) { classes.add(dfa.tailClass); break; }
+                classes.add((int) dfa.classMap[c]);
+            }
+        StringBuilder sb = new StringBuilder();
+        for (int cls : classes)
+            sb.append(sb.length() == 0 ? "" : " ").append("case ").append(cls).append(':');
+        return sb.toString();
+    }
+
+    private static String charLiteral(int c) {
+        if (c >= 0x20 && c < 0x7f && c != '\'' && c != '\\') return "'" + (char) c + "'";
+        return Integer.toString(c);
+    }
+
+    // Keyword check on the token's chars, by length and then char by char, without a String.
+    private static void writeKeywords(List<String> keywords, StringBuilder out) {
+        Map<Integer, List<String>> byLength = new TreeMap<>();
+        for (String keyword : keywords)
+            byLength.computeIfAbsent(keyword.length(), k -> new ArrayList<>()).add(keyword);
+        out.append("    private boolean isKeyword(int from, int length) {\n");
+        out.append("        switch (length) {\n");
+        for (Map.Entry<Integer, List<String>> e : byLength.entrySet()) {
+            List<String> words = e.getValue();
+            Collections.sort(words);
+            out.append("            case ").append(e.getKey()).append(": return ");
+            for (int w = 0; w < words.size(); w++)
+                out.append(w == 0 ? "" : "\n                    || ").append("is(from, ").append(javaString(words.get(w))).append(")");
+            out.append(";\n");
+        }
+        out.append("            default: return false;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+        out.append("    private boolean is(int from, String word) {\n");
+        out.append("        for (int k = 0; k < word.length(); k++)\n");
+        out.append("            if (in[from + k] != word.charAt(k)) return false;\n");
+        out.append("        return true;\n");
+        out.append("    }\n\n");
+    }
+
+    // The chars as a comma-separated list of string constants of at most CHUNK chars each.
+    private static String packed(char[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (int from = 0; from < data.length || from == 0; from += CHUNK) {
+            if (from > 0) sb.append(",\n            ");
+            sb.append(javaString(new String(data, from, Math.min(CHUNK, data.length - from))));
+        }
+        return sb.toString();
+    }
+
+    // String literal with every char outside printable ASCII escaped. Chars below 0x100 use octal
+    // escapes: unicode escapes are translated before lexing, so a line feed written as one would
+    // end the line.
+    static String javaString(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c >= 0x20 && c < 0x7f) sb.append(c);
+            else if (c < 0x100) sb.append(String.format("\\%03o", (int) c));
+            else sb.append(String.format("\\u%04x", (int) c));
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,142 @@
+package lexer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Optional lexing counters. Attach one instance to any number of LexicalAnalyzers on any number
+// of threads (see the LexicalAnalyzer constructor); analyzers without one skip all of this at
+// the cost of a null check per token.
+//
+// Each scan counts into plain fields of its own Scan and adds them to the shared LongAdders once,
+// when the scan ends, so the scan loop never writes shared memory. Counts are of scanning work:
+// a parallel run also counts its speculative chunk scans and an incremental edit its re-scan,
+// and scan time adds up the time of every scan (so it can exceed wall time). Sizes are in chars.
+// Every finished scan is also reported as a JFR "lexer.Scan" event when that event is enabled.
+public class LexerMetrics {
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder backtrack = new LongAdder();
+    private final LongAccumulator maxBacktrack = new LongAccumulator(Long::max, 0);
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+    // Token count and chars per token name (comments included).
+    private final Map<String, LongAdder[]> byKind = new ConcurrentHashMap<>();
+
+    // Time spent building (or loading) lexer tables, measured by the caller.
+    public void recordBuild(long nanos) {
+        builds.increment();
+        buildNanos.add(nanos);
+    }
+
+    void record(String[] tokenNames, Scan scan, long charsScanned) {
+        long nanos = System.nanoTime() - scan.startNanos;
+        long tokenCount = 0;
+        for (int kind = 0; kind < scan.tokens.length; kind++) {
+            if (scan.tokens[kind] == 0) continue;
+            tokenCount += scan.tokens[kind];
+            LongAdder[] counts = byKind.computeIfAbsent(tokenNames[kind], k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+            counts[0].add(scan.tokens[kind]);
+            counts[1].add(scan.chars[kind]);
+        }
+        scans.increment();
+        chars.add(charsScanned);
+        tokens.add(tokenCount);
+        errors.add(scan.errors);
+        backtrack.add(scan.backtrack);
+        maxBacktrack.accumulate(scan.maxBacktrack);
+        scanNanos.add(nanos);
+        if (scan.event.shouldCommit()) {
+            scan.event.chars = charsScanned;
+            scan.event.tokens = tokenCount;
+            scan.event.errors = scan.errors;
+            scan.event.backtrack = scan.backtrack;
+            scan.event.commit();
+        }
+    }
+
+    public Snapshot snapshot() {
+        Map<String, Long> tokensByKind = new TreeMap<>(), charsByKind = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> e : byKind.entrySet()) {
+            tokensByKind.put(e.getKey(), e.getValue()[0].sum());
+            charsByKind.put(e.getKey(), e.getValue()[1].sum());
+        }
+        return new Snapshot(scans.sum(), chars.sum(), tokens.sum(), errors.sum(), backtrack.sum(), maxBacktrack.get(),
+                scanNanos.sum(), builds.sum(), buildNanos.sum(), tokensByKind, charsByKind);
+    }
+
+    public void reset() {
+        for (LongAdder adder : List.of(scans, chars, tokens, errors, backtrack, scanNanos, builds, buildNanos))
+            adder.reset();
+        maxBacktrack.reset();
+        byKind.clear();
+    }
+
+    // Counters of one scan, owned by a single DFAScanner.
+    static final class Scan {
+        final long[] tokens, chars;   // per raw token kind
+        long errors;
+        long backtrack, maxBacktrack; // chars examined past the end of the token (or bad char)
+        final long startNanos = System.nanoTime();
+        final LexerScanEvent event = new LexerScanEvent();
+
+        Scan(int kinds) {
+            tokens = new long[kinds];
+            chars = new long[kinds];
+            event.begin();
+        }
+
+        void token(int kind, int length, int overrun) {
+            tokens[kind]++;
+            chars[kind] += length;
+            backtrack += overrun;
+            if (overrun > maxBacktrack) maxBacktrack = overrun;
+        }
+
+        void error(int overrun) {
+            errors++;
+            backtrack += overrun;
+            if (overrun > maxBacktrack) maxBacktrack = overrun;
+        }
+    }
+
+    // Point-in-time copy of the counters.
+    public static class Snapshot {
+        public final long scans, chars, tokens, errors;
+        public final long backtrackChars, maxBacktrack;
+        public final long scanNanos, builds, buildNanos;
+        public final Map<String, Long> tokensByKind, charsByKind;
+
+        Snapshot(long scans, long chars, long tokens, long errors, long backtrackChars, long maxBacktrack,
+                 long scanNanos, long builds, long buildNanos, Map<String, Long> tokensByKind, Map<String, Long> charsByKind) {
+            this.scans = scans;
+            this.chars = chars;
+            this.tokens = tokens;
+            this.errors = errors;
+            this.backtrackChars = backtrackChars;
+            this.maxBacktrack = maxBacktrack;
+            this.scanNanos = scanNanos;
+            this.builds = builds;
+            this.buildNanos = buildNanos;
+            this.tokensByKind = Collections.unmodifiableMap(tokensByKind);
+            this.charsByKind = Collections.unmodifiableMap(charsByKind);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Table build: %d build(s), %.3f ms%n", builds, buildNanos / 1e6));
+            sb.append(String.format("Scan: %d scan(s), %.3f ms, %d chars, %d tokens, %d errors%n",
+                    scans, scanNanos / 1e6, chars, tokens, errors));
+            sb.append(String.format("Backtrack: %d chars re-scanned (%.3f per token), longest %d%n",
+                    backtrackChars, tokens + errors == 0 ? 0.0 : backtrackChars / (double) (tokens + errors), maxBacktrack));
+            for (Map.Entry<String, Long> e : tokensByKind.entrySet())
+                sb.append(String.format("  %-20s %10d tokens %12d chars%n", e.getKey(), e.getValue(), charsByKind.get(e.getKey())));
+            return sb.toString();
+        }
+    }
+}
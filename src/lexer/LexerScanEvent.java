@@ -0,0 +1,18 @@
+package lexer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for one finished scan of an analyzer with LexerMetrics attached.
+// Record with e.g. java -XX:StartFlightRecording:filename=lex.jfr ... and open in JMC.
+@Name("lexer.Scan")
+@Label("Lexer Scan")
+@Category("MyLang")
+class LexerScanEvent extends Event {
+    @Label("Chars") long chars;
+    @Label("Tokens") long tokens;
+    @Label("Errors") long errors;
+    @Label("Backtracked Chars") long backtrack;
+}
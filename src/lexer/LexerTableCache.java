@@ -0,0 +1,112 @@
+package lexer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import automata.CompiledDFA;
+
+// On-disk cache of compiled lexer tables, keyed on a SHA-256 of the token spec.
+// File layout: magic, format version, spec hash, payload length, payload CRC32, payload
+// (see CompiledDFA.writeTo). A missing, stale or damaged file is treated as a miss.
+public class LexerTableCache {
+    private static final int MAGIC = 0x4D4C4454; // "MLDT"
+    // Bump whenever the table layout or the NFA/DFA construction changes meaningfully.
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 32 + 4 + 8;
+
+    public static CompiledDFA loadOrBuild(TokenSpec spec, Path file) {
+        CompiledDFA dfa = load(spec, file);
+        if (dfa == null) {
+            dfa = spec.compile();
+            store(spec, dfa, file);
+        }
+        return dfa;
+    }
+
+    // Returns null unless the file holds intact tables for exactly this spec.
+    public static CompiledDFA load(TokenSpec spec, Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) return null;
+            byte[] hash = new byte[32];
+            buf.get(hash);
+            if (!Arrays.equals(hash, specHash(spec))) return null;
+            int payloadLength = buf.getInt();
+            long crc = buf.getLong();
+            if (payloadLength != buf.remaining()) return null;
+            CRC32 check = new CRC32();
+            check.update(buf.duplicate());
+            if (check.getValue() != crc) return null;
+            return CompiledDFA.readFrom(buf);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Writes to a temporary file and moves it into place, so readers never see a partial file.
+    // Failing to write the cache is not fatal; the next run simply rebuilds. A temporary file
+    // that was not moved into place is deleted.
+    public static void store(TokenSpec spec, CompiledDFA dfa, Path file) {
+        Path tmp = null;
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(payload)) {
+                dfa.writeTo(out);
+            }
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            Path dir = file.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(specHash(spec));
+                out.writeInt(bytes.length);
+                out.writeLong(crc.getValue());
+                out.write(bytes);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null; // moved into place
+        } catch (IOException e) {
+            System.err.println("Could not write lexer table cache: " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + tmp + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Hash over every (name, regex, priority) entry in declaration order.
+    public static byte[] specHash(TokenSpec spec) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer num = ByteBuffer.allocate(4);
+            digest.update(num.putInt(0, FORMAT_VERSION).array());
+            for (TokenSpec.Entry e : spec.entries()) {
+                for (String part : new String[] { e.name, e.regex }) {
+                    byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                    digest.update(num.putInt(0, bytes.length).array());
+                    digest.update(bytes);
+                }
+                digest.update(num.putInt(0, e.priority).array());
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
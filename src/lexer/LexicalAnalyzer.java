@@ -1,111 +1,255 @@
 package lexer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.*;
-import automata.NFABuilder;
-import automata.NFABuilder.DFAState;
-import automata.NFABuilder.State;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import automata.CompiledDFA;
+import automata.LazyDFA;
 import token.Token;
+import token.TokenBuffer;
 
+// One analyzer per task: it writes to its own ErrorHandler and SymbolTable. The CompiledDFA
+// is only read, so a single instance can be shared by analyzers on many threads (a LazyDFA is
+// the exception: it fills in its table while lexing, so it belongs to one thread).
 public class LexicalAnalyzer {
-    DFAState dfaStart;
-    ErrorHandler errorHandler;
-    SymbolTable symbolTable;
-    
-    private static final Set<String> keywords = new HashSet<>(
+    final CompiledDFA dfa;
+    final ErrorHandler errorHandler;
+    final SymbolTable symbolTable;
+    final LexerMetrics metrics; // null unless counters were requested
+    private boolean linearTime;
+
+    static final Set<String> keywords = new HashSet<>(
         Arrays.asList("global", "local", "const", "int", "float", "bool", "char", "string", "if", "else", "for", "while", "return")
     );
+    private static final KeywordTable keywordHash = KeywordTable.of(keywords);
+
+    // Token kinds the lexer treats specially (-1 when the spec does not define them).
+    final int identifierKind;
+    final int keywordKind;
+    // Identifiers to check against the keywords: null when the DFA already accepts every keyword
+    // as KEYWORD, so no IDENTIFIER token can be one and the decision was made in the accept state.
+    final KeywordTable keywordTable;
+    final boolean[] discardKind;
+    // Reported type name per kind (INTEGER and DECIMAL are reported as LITERAL).
+    final String[] typeNames;
+
+    public LexicalAnalyzer(CompiledDFA dfa, ErrorHandler errorHandler, SymbolTable symbolTable) {
+        this(dfa, errorHandler, symbolTable, null);
+    }
     
-    private static final Map<String, Integer> tokenPriorityMap = new HashMap<>();
-    static {
-        tokenPriorityMap.put("KEYWORD", 6);
-        tokenPriorityMap.put("STRING_LITERAL", 5);
-        tokenPriorityMap.put("CHARACTER_LITERAL", 5);
-        tokenPriorityMap.put("INTEGER", 5);
-        tokenPriorityMap.put("DECIMAL", 5);
-        tokenPriorityMap.put("STDOUT", 5);
-        tokenPriorityMap.put("STDIN", 5);
-        tokenPriorityMap.put("OPERATOR", 5);
-        tokenPriorityMap.put("DELIMITER", 5);
-        tokenPriorityMap.put("IDENTIFIER", 4);
-        tokenPriorityMap.put("SINGLE_LINE_COMMENT", 1);
-        tokenPriorityMap.put("MULTI_LINE_COMMENT", 1);
-    }
-    
-    private int getTokenPriority(String tokenType) {
-        Integer prio = tokenPriorityMap.get(tokenType);
-        return prio != null ? prio : 0;
-    }
-    
-    public LexicalAnalyzer(DFAState dfaStart, ErrorHandler errorHandler, SymbolTable symbolTable) {
-        this.dfaStart = dfaStart;
+    // metrics may be shared between analyzers; null disables counting.
+    public LexicalAnalyzer(CompiledDFA dfa, ErrorHandler errorHandler, SymbolTable symbolTable, LexerMetrics metrics) {
+        this.dfa = dfa;
         this.errorHandler = errorHandler;
         this.symbolTable = symbolTable;
+        this.metrics = metrics;
+        this.identifierKind = dfa.kindOf("IDENTIFIER");
+        this.keywordKind = dfa.kindOf("KEYWORD");
+        boolean keywordsInDfa = true;
+        for (String keyword : keywords)
+            keywordsInDfa &= dfa.acceptKindOf(keyword) == keywordKind;
+        this.keywordTable = identifierKind >= 0 && keywordKind >= 0 && !keywordsInDfa ? keywordHash : null;
+        this.discardKind = new boolean[dfa.tokenNames.length];
+        this.typeNames = new String[dfa.tokenNames.length];
+        for (int kind = 0; kind < typeNames.length; kind++) {
+            String name = dfa.tokenNames[kind];
+            discardKind[kind] = name.equals("SINGLE_LINE_COMMENT") || name.equals("MULTI_LINE_COMMENT");
+            typeNames[kind] = name.equals("INTEGER") || name.equals("DECIMAL") ? "LITERAL" : name;
+        }
+    }
+
+    // Linear-time mode for untrusted input: scanners memoize (state, offset) pairs from which the
+    // DFA is known not to reach another accepting state (see FailureMemo), so no token spec can
+    // make maximal munch rescan the input quadratically. Tokens, lines and errors are unchanged;
+    // the price is a few stores per char on non-accepting states and a set of failed pairs.
+    // Memoized state ids must stay valid, which a LazyDFA's do not across cache flushes.
+    public LexicalAnalyzer linearTime(boolean enabled) {
+        if (enabled && dfa instanceof LazyDFA)
+            throw new IllegalStateException("Linear-time mode needs a compiled DFA, not a lazy one");
+        this.linearTime = enabled;
+        return this;
     }
     
     public List<Token> tokenize(String source) {
-        List<Token> tokens = new ArrayList<>();
-        int pos = 0, line = 1;
-        while (pos < source.length()) {
-            char current = source.charAt(pos);
-            if (current == ' ' || current == '\t' || current == '\r') { pos++; continue; }
-            if (current == '\n') { line++; pos++; continue; }
-            int startPos = pos;
-            DFAState currentState = dfaStart;
-            int lastAcceptPos = -1;
-            DFAState lastAcceptState = null;
-            int i = pos;
-            while (i < source.length()) {
-                char ch = source.charAt(i);
-                DFAState nextState = currentState.transitions.get(ch);
-                if (nextState == null)
-                    nextState = currentState.transitions.get(NFABuilder.WILDCARD_MARKER);
-                if (nextState == null) break;
-                currentState = nextState;
-                i++;
-                if (currentState.isAccept) { lastAcceptPos = i; lastAcceptState = currentState; }
+        return tokenizeToBuffer(source).toTokens();
+    }
+    
+    // Columnar variant of tokenize: only identifiers (for the symbol table) become Token objects.
+    public TokenBuffer tokenizeToBuffer(String source) {
+        TokenBuffer tokens = new TokenBuffer(source, typeNames);
+        // A window no larger than the source keeps small files cheap.
+        int window = (int) Math.min(DFAScanner.DEFAULT_WINDOW, source.length() + 1L);
+        DFAScanner scanner = attach(new DFAScanner(dfa, discardKind, new StringReader(source), window));
+        try {
+            while (nextToken(scanner) >= 0)
+                tokens.add(scanner.kind, (int) scanner.offset(scanner.start), scanner.end - scanner.start, scanner.tokenLine);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringReader does not fail
+        }
+        finish(scanner, 0);
+        return tokens;
+    }
+    
+    // Parallel variant of tokenizeToBuffer for large inputs: chunks are lexed speculatively on
+    // the pool and stitched together, giving the same tokens, lines, errors and symbols.
+    // A LazyDFA cannot be shared between threads, so it is lexed sequentially.
+    public TokenBuffer tokenizeParallel(String source, ExecutorService pool, int chunkCount) {
+        if (dfa instanceof LazyDFA) return tokenizeToBuffer(source);
+        return new ParallelTokenizer(this, source).run(pool, chunkCount);
+    }
+    
+    public TokenBuffer tokenizeParallel(String source) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return tokenizeParallel(source, pool, pool.getParallelism() * 4);
+    }
+    
+    // UTF-8 input lexed as bytes, without decoding it first: the scanner steps dfa.utf8(), the
+    // same automaton over UTF-8 byte sequences. Tokens, lines, errors and symbols are those of
+    // tokenizeToBuffer on the decoded text, except that offsets and lengths are in bytes and
+    // lexemes are decoded on access (identifiers go to the keyword check and symbol table as
+    // chars, decoded only if they are not ASCII). Malformed bytes are reported one at a time as
+    // U+FFFD. Lexes from the buffer's position to its limit; offsets count from the position.
+    public TokenBuffer tokenizeUtf8(ByteBuffer source) {
+        if (linearTime)
+            throw new IllegalStateException("Linear-time mode lexes chars; use tokenizeToBuffer");
+        ByteBuffer bytes = source.slice();
+        TokenBuffer tokens = new TokenBuffer(bytes, typeNames);
+        Utf8Scanner scanner = new Utf8Scanner(dfa.utf8(), discardKind, bytes);
+        if (metrics != null) scanner.scan = new LexerMetrics.Scan(dfa.tokenNames.length);
+        for (int kind; (kind = scanner.next()) != Utf8Scanner.EOF; ) {
+            if (kind == Utf8Scanner.ERROR) {
+                String text = scanner.text(scanner.start, scanner.end);
+                for (int k = 0; k < text.length(); k++)
+                    reportError(text.charAt(k), scanner.tokenLine);
+                continue;
             }
-            if (lastAcceptState == null) {
-                errorHandler.addError("Unrecognized token starting with '" + source.charAt(pos) + "'", line);
-                pos++;
-            } else {
-                String lexeme = source.substring(startPos, lastAcceptPos);
-                String tokenType = getTokenTypeFromDFAState(lastAcceptState);
-                tokenType = determineTokenType(tokenType, lexeme);
-                // Discard comments.
-                if (tokenType.equals("SINGLE_LINE_COMMENT") || tokenType.equals("MULTI_LINE_COMMENT")) {
-                    pos = lastAcceptPos;
-                    continue;
+            if (kind == identifierKind) {
+                char[] ascii = scanner.ascii(scanner.start, scanner.end);
+                if (ascii != null) {
+                    kind = resolveKind(kind, ascii, 0, scanner.end - scanner.start, scanner.tokenLine);
+                } else {
+                    String lexeme = scanner.text(scanner.start, scanner.end);
+                    kind = determineTokenKind(kind, lexeme);
+                    if (kind == identifierKind) recordIdentifier(lexeme, scanner.tokenLine);
                 }
-                Token token = new Token(tokenType, lexeme, line);
-                tokens.add(token);
-                if (tokenType.equals("IDENTIFIER"))
-                    symbolTable.addSymbol(token);
-                pos = lastAcceptPos;
             }
+            tokens.add(kind, scanner.start, scanner.end - scanner.start, scanner.tokenLine);
         }
+        if (scanner.scan != null)
+            metrics.record(dfa.tokenNames, scanner.scan, scanner.position());
         return tokens;
     }
+
+    public TokenBuffer tokenizeUtf8(byte[] source) {
+        return tokenizeUtf8(ByteBuffer.wrap(source));
+    }
+
+    // Maps the file and lexes the mapping in place; the returned buffer keeps it mapped.
+    public TokenBuffer tokenizeUtf8(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return tokenizeUtf8(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
     
-    private String getTokenTypeFromDFAState(DFAState dfaState) {
-        String chosenType = "UNKNOWN";
-        int bestPriority = -1;
-        for (State s : dfaState.nfaStates) {
-            if (s.isAccept && s.tokenType != null) {
-                int prio = getTokenPriority(s.tokenType);
-                if (prio > bestPriority) {
-                    bestPriority = prio;
-                    chosenType = s.tokenType;
-                }
+    // Editor session over source: edits re-lex only the affected range (see IncrementalLexer).
+    public IncrementalLexer incremental(String source) {
+        return new IncrementalLexer(this, source);
+    }
+    
+    // Streams the file through a memory-mapped window; memory use is bounded by the longest token.
+    public void tokenize(Path file, Charset charset, Consumer<Token> sink) throws IOException {
+        try (Reader reader = new MappedFileReader(file, charset)) {
+            tokenize(reader, sink);
+        }
+    }
+    
+    public void tokenize(Reader reader, Consumer<Token> sink) throws IOException {
+        DFAScanner scanner = newScanner(reader);
+        while (nextToken(scanner) >= 0)
+            sink.accept(toToken(scanner));
+        finish(scanner, 0);
+    }
+    
+    // Lazy variants: nothing is scanned until the stream is asked for a token.
+    public TokenStream tokenStream(String source) {
+        return new TokenStream(this, source);
+    }
+    
+    public TokenStream tokenStream(Reader reader) {
+        return new TokenStream(this, reader);
+    }
+    
+    public TokenStream tokenStream(Path file, Charset charset) throws IOException {
+        return new TokenStream(this, new MappedFileReader(file, charset));
+    }
+    
+    DFAScanner newScanner(Reader reader) {
+        return attach(new DFAScanner(dfa, discardKind, reader, DFAScanner.DEFAULT_WINDOW));
+    }
+    
+    // Gives the scanner its own counters if metrics are attached (finish adds them to the
+    // metrics once the scan is over; from is the offset the scan started at) and, in linear-time
+    // mode, its own failure memo.
+    DFAScanner attach(DFAScanner scanner) {
+        if (metrics != null) scanner.scan = new LexerMetrics.Scan(dfa.tokenNames.length);
+        if (linearTime) scanner.enableFailureMemo();
+        return scanner;
+    }
+    
+    void finish(DFAScanner scanner, long from) {
+        if (scanner.scan == null) return;
+        metrics.record(dfa.tokenNames, scanner.scan, scanner.position() - from);
+        scanner.scan = null;
+    }
+    
+    // Advances the scanner to the next token, reporting unrecognized chars and resolving
+    // identifiers on the way. Returns the token's final kind, or DFAScanner.EOF.
+    int nextToken(DFAScanner scanner) throws IOException {
+        for (;;) {
+            int kind = scanner.next();
+            if (kind == DFAScanner.ERROR) {
+                reportError(scanner.window()[scanner.start], scanner.tokenLine);
+                continue;
             }
+            if (kind >= 0)
+                scanner.kind = resolveKind(kind, scanner.window(), scanner.start, scanner.end, scanner.tokenLine);
+            return kind < 0 ? kind : scanner.kind;
         }
-        return chosenType;
     }
     
-    private String determineTokenType(String tokenType, String lexeme) {
-        if (tokenType.equals("IDENTIFIER") && keywords.contains(lexeme))
-            return "KEYWORD";
-        if (tokenType.equals("INTEGER") || tokenType.equals("DECIMAL"))
-            return "LITERAL";
-        return tokenType;
+    Token toToken(DFAScanner scanner) {
+        return new Token(typeNames[scanner.kind], scanner.text(), scanner.tokenLine);
+    }
+    
+    // Final kind of a scanned token; identifiers are checked against the keywords and recorded.
+    // The span is interned in place, so no String is built for a name the table has seen.
+    int resolveKind(int kind, char[] buf, int start, int end, int line) {
+        if (kind != identifierKind) return kind;
+        if (keywordTable != null && keywordTable.contains(buf, start, end)) return keywordKind;
+        symbolTable.bind(symbolTable.local(buf, start, end), typeNames[identifierKind], line);
+        return kind;
+    }
+    
+    void recordIdentifier(String lexeme, int line) {
+        symbolTable.bind(symbolTable.local(lexeme), typeNames[identifierKind], line);
+    }
+    
+    void reportError(char c, int line) {
+        errorHandler.addError("Unrecognized token starting with '" + c + "'", line);
+    }
+    
+    int determineTokenKind(int kind, String lexeme) {
+        if (kind == identifierKind && keywordTable != null && keywordTable.contains(lexeme))
+            return keywordKind;
+        return kind;
     }
 }
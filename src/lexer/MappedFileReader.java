@@ -0,0 +1,79 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reader that decodes a file through a sliding read-only memory mapping, so files larger than
+// the heap (or than a single 2 GB mapping) can be streamed. Only one region is mapped at a
+// time; bytes of a multi-byte sequence split across regions are re-mapped with the next one.
+// Malformed input is replaced, as FileReader does.
+public class MappedFileReader extends Reader {
+    static final long DEFAULT_REGION = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+    private final CharsetDecoder decoder;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean flushed;
+
+    public MappedFileReader(Path file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_REGION);
+    }
+
+    public MappedFileReader(Path file, Charset charset, long regionSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = Math.max(16, regionSize);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (flushed) return -1;
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            long consumed = regionStart + region.position();
+            boolean lastRegion = regionStart + region.limit() == size;
+            if (!lastRegion && region.remaining() < 16) {
+                map(consumed);
+                continue;
+            }
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (result.isError()) result.throwException();
+            if (result.isOverflow()) break;
+            if (lastRegion && !region.hasRemaining()) {
+                if (decoder.flush(out).isUnderflow()) flushed = true;
+                break;
+            }
+            if (!lastRegion) map(regionStart + region.position());
+        }
+        int n = out.position() - off;
+        return n == 0 && flushed ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,185 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import token.TokenBuffer;
+
+// Chunked parallel lexing with speculative chunk starts.
+//
+// The input is cut into chunks (each boundary nudged to just after a newline). Every chunk is
+// lexed independently on the pool as if a token started at its first char, with line numbers
+// counted from 0, recording every position where a token scan began ("scan starts").
+// Scanning from a given scan start is deterministic, so the merge walks the chunks in order:
+// where the true token stream enters a chunk, it is scanned sequentially until it reaches one
+// of the chunk's speculative scan starts, and from there the speculative tokens are spliced in
+// with their lines shifted. Tokens that cross a boundary (long comments or string literals)
+// are handled by that fix-up scan. Errors and symbol table entries are replayed in order during
+// the merge, so the result is identical to LexicalAnalyzer.tokenizeToBuffer.
+final class ParallelTokenizer {
+    static final int MIN_CHUNK = 1 << 18;
+    private static final int NEWLINE_SEARCH = 1 << 12;
+
+    private final LexicalAnalyzer lexer;
+    private final String source;
+
+    ParallelTokenizer(LexicalAnalyzer lexer, String source) {
+        this.lexer = lexer;
+        this.source = source;
+    }
+
+    TokenBuffer run(ExecutorService pool, int chunkCount) {
+        int[] bounds = chunkBounds(chunkCount);
+        if (bounds.length == 2) return lexer.tokenizeToBuffer(source); // too small to split
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int start = bounds[i], end = bounds[i + 1];
+            tasks.add(() -> scanChunk(start, end));
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            for (Future<Chunk> future : pool.invokeAll(tasks))
+                chunks.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while lexing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return merge(chunks);
+    }
+
+    private int[] chunkBounds(int chunkCount) {
+        int n = Math.max(1, Math.min(chunkCount, source.length() / MIN_CHUNK));
+        int[] bounds = new int[n + 1];
+        for (int i = 1; i < n; i++) {
+            int b = (int) ((long) source.length() * i / n);
+            int nl = source.indexOf('\n', b);
+            if (nl >= 0 && nl - b < NEWLINE_SEARCH) b = nl + 1;
+            bounds[i] = Math.max(b, bounds[i - 1]);
+        }
+        bounds[n] = source.length();
+        return bounds;
+    }
+
+    // Speculative scan of [start, end): tokens, errors and scan starts, lines relative to start.
+    private Chunk scanChunk(int start, int end) throws IOException {
+        Chunk chunk = new Chunk(start, end);
+        StringReader reader = new StringReader(source);
+        reader.skip(start);
+        DFAScanner scanner = lexer.attach(new DFAScanner(lexer.dfa, lexer.discardKind, reader, DFAScanner.DEFAULT_WINDOW, start, 0));
+        scanner.stopAt = end;
+        scanner.scanStarts = chunk.scanStarts;
+        scanner.scanStartsBase = start;
+        for (int kind; (kind = scanner.next()) != DFAScanner.EOF; ) {
+            int at = (int) scanner.offset(scanner.start);
+            if (kind == DFAScanner.ERROR) {
+                chunk.addError(at, scanner.tokenLine);
+                continue;
+            }
+            String lexeme = null;
+            if (kind == lexer.identifierKind) {
+                lexeme = scanner.text();
+                kind = lexer.determineTokenKind(kind, lexeme);
+                if (kind != lexer.identifierKind) lexeme = null;
+            }
+            chunk.addToken(kind, at, scanner.end - scanner.start, scanner.tokenLine, lexeme);
+        }
+        chunk.stoppedAt = scanner.stoppedAt >= 0 ? (int) scanner.stoppedAt : source.length();
+        chunk.endLine = scanner.line();
+        lexer.finish(scanner, start);
+        return chunk;
+    }
+
+    private TokenBuffer merge(List<Chunk> chunks) {
+        TokenBuffer out = new TokenBuffer(source, lexer.typeNames);
+        int entry = 0, line = 1;
+        try {
+            for (Chunk chunk : chunks) {
+                if (entry >= chunk.end) continue; // swallowed by a token from an earlier chunk
+                if (!chunk.scanStarts.get(entry - chunk.start)) {
+                    // Re-scan for real until the stream meets one of the chunk's scan starts.
+                    StringReader reader = new StringReader(source);
+                    reader.skip(entry);
+                    DFAScanner fix = lexer.attach(new DFAScanner(lexer.dfa, lexer.discardKind, reader, DFAScanner.DEFAULT_WINDOW, entry, line));
+                    fix.stopAt = chunk.end;
+                    fix.syncPoints = chunk.scanStarts;
+                    fix.syncBase = chunk.start;
+                    while (lexer.nextToken(fix) >= 0)
+                        out.add(fix.kind, (int) fix.offset(fix.start), fix.end - fix.start, fix.tokenLine);
+                    line = fix.line();
+                    lexer.finish(fix, entry);
+                    entry = fix.stoppedAt >= 0 ? (int) fix.stoppedAt : source.length();
+                    if (!fix.synced) continue;
+                }
+                int shift = line - chunk.lineAt(entry, source);
+                for (int e = 0; e < chunk.errorCount; e++)
+                    if (chunk.errorPos[e] >= entry)
+                        lexer.reportError(source.charAt(chunk.errorPos[e]), chunk.errorLine[e] + shift);
+                for (int t = 0; t < chunk.count; t++) {
+                    if (chunk.starts[t] < entry) continue;
+                    int tokenLine = chunk.lines[t] + shift;
+                    String lexeme = chunk.lexemes[t];
+                    if (lexeme != null) lexer.recordIdentifier(lexeme, tokenLine);
+                    out.add(chunk.kinds[t], chunk.starts[t], chunk.lengths[t], tokenLine);
+                }
+                line = chunk.endLine + shift;
+                entry = chunk.stoppedAt;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringReader does not fail
+        }
+        return out;
+    }
+
+    private static final class Chunk {
+        final int start, end;
+        final BitSet scanStarts = new BitSet();
+        int stoppedAt, endLine;
+        int count;
+        int[] kinds = new int[256], starts = new int[256], lengths = new int[256], lines = new int[256];
+        String[] lexemes = new String[256]; // identifier text, null for other tokens
+        int errorCount;
+        int[] errorPos = new int[16], errorLine = new int[16];
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void addToken(int kind, int at, int length, int line, String lexeme) {
+            if (count == kinds.length) {
+                kinds = Arrays.copyOf(kinds, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+                lexemes = Arrays.copyOf(lexemes, count * 2);
+            }
+            lexemes[count] = lexeme;
+            kinds[count] = kind;
+            starts[count] = at;
+            lengths[count] = length;
+            lines[count++] = line;
+        }
+
+        void addError(int at, int line) {
+            if (errorCount == errorPos.length) {
+                errorPos = Arrays.copyOf(errorPos, errorCount * 2);
+                errorLine = Arrays.copyOf(errorLine, errorCount * 2);
+            }
+            errorPos[errorCount] = at;
+            errorLine[errorCount++] = line;
+        }
+
+        // Speculative line number at a scan start: newlines skipped at earlier scan starts.
+        int lineAt(int at, String source) {
+            int line = 0;
+            for (int q = scanStarts.nextSetBit(0); q >= 0 && start + q < at; q = scanStarts.nextSetBit(q + 1))
+                if (source.charAt(start + q) == '\n') line++;
+            return line;
+        }
+    }
+}
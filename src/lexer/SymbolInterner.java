@@ -0,0 +1,91 @@
+package lexer;
+
+import java.util.Arrays;
+
+// Identifier interner: every distinct name gets a dense int id (0, 1, 2, ... in first-seen order)
+// and one canonical String. Spans of a char buffer are hashed and compared in place, so only the
+// first occurrence of a name builds a String. Thread-safe, so batch mode can share one interner
+// between all files; each SymbolTable looks names up in its own cache first and only comes here
+// (taking the lock) the first time it sees a name. A table that is not given one needs none.
+public class SymbolInterner {
+    private int[] slots = new int[64];   // open addressing by hash, id + 1 (0 = empty)
+    private String[] names = new String[32];
+    private int[] hashes = new int[32];
+    private int size;
+
+    public int intern(char[] buf, int start, int end) {
+        return intern(buf, start, end, hash(buf, start, end));
+    }
+
+    // As above, with the span's hash (see hash) already computed.
+    synchronized int intern(char[] buf, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = slot(hash, mask); ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) return add(new String(buf, start, end - start), hash);
+            if (hashes[id] == hash && matches(names[id], buf, start, end)) return id;
+        }
+    }
+
+    public synchronized int intern(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = slot(hash, mask); ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) return add(name, hash);
+            if (hashes[id] == hash && names[id].equals(name)) return id;
+        }
+    }
+
+    public synchronized String name(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        if (++size * 2 > slots.length) rehash(slots.length * 2);
+        else place(size - 1);
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < size; id++) place(id);
+    }
+
+    private void place(int id) {
+        int mask = slots.length - 1;
+        int slot = slot(hashes[id], mask);
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = id + 1;
+    }
+
+    // String.hashCode of the span, so names hash the same whether they come as spans or Strings.
+    static int hash(char[] buf, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + buf[i];
+        return h;
+    }
+
+    // Home slot of a hash in a table of mask + 1 slots: the top bits of a Fibonacci hash. String
+    // hashes of short names are dense in their low bits, which would cluster under linear probing.
+    static int slot(int hash, int mask) {
+        return (hash * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+
+    static boolean matches(String name, char[] buf, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != buf[start + i]) return false;
+        return true;
+    }
+}
@@ -1,29 +1,237 @@
 package lexer;
 
 import token.Token;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
+import java.util.function.IntUnaryOperator;
 
+// Scoped symbol table over interned names. Each name gets a local index, found by hashing the
+// source span in place, so only a name's first occurrence builds a String. A table on its own
+// is its own interner: local indexes are the ids, with no lock and no second lookup. Tables
+// given a SymbolInterner (e.g. across the files of a batch) cache its global ids under their
+// local indexes and only ask it, under its lock, about names new to the table.
+//
+// Bindings live in one arena in the order they were made; a scope is the arena range from where
+// it was entered. Each binding links to the binding of the same name it shadows and each name
+// to its innermost binding, so lookup is one array read, enterScope is O(1) and exitScope undoes
+// only the bindings of the scope being left. A binding keeps its type and line, not a Token;
+// Tokens are built when asked for. Binding a name again in the same scope replaces the binding
+// in place, and removing one leaves a hole, so the live bindings of a scope stay in the order a
+// HashMap would have them in its buckets: display prints each scope in the same order as when
+// every scope was a HashMap.
 public class SymbolTable {
-    private Stack<Map<String, Token>> scopes = new Stack<>();
-    public SymbolTable() { enterScope(); }
-    public void enterScope() { scopes.push(new HashMap<>()); }
-    public void exitScope() { if (scopes.size() > 1) scopes.pop(); }
-    public void addSymbol(Token token) { scopes.peek().put(token.value, token); }
+    private final SymbolInterner interner; // null unless shared
+
+    // Names seen by this table, by local index: global id, name, hash and innermost binding (-1 if none).
+    private int[] slots = new int[64];       // open addressing by hash, local index + 1 (0 = empty)
+    private int[] symbolId = new int[32];
+    private String[] symbolName = new String[32];
+    private int[] symbolHash = new int[32];
+    private int[] innermost = new int[32];
+    private int symbolCount;
+
+    // Binding arena: name (local index), shadowed binding, line and type (null once removed).
+    private int[] bindSymbol = new int[64];
+    private int[] bindShadowed = new int[64];
+    private int[] bindLine = new int[64];    // ~key for a line kept by liveLines
+    private String[] bindType = new String[64];
+    private int bindCount;
+
+    // Per open scope: first binding, live bindings and the most it ever had.
+    private int[] scopeStart = new int[8];
+    private int[] scopeSize = new int[8];
+    private int[] scopeMax = new int[8];
+    private int depth = -1;
+    private int size;
+
+    // Lines that change without the table being told (see IncrementalLexer): a binding made by
+    // bindLive reads its line from liveLines when asked for it.
+    IntUnaryOperator liveLines;
+
+    public SymbolTable() { this(null); }
+
+    // interner: shared with other tables, or null for a table that is its own interner.
+    public SymbolTable(SymbolInterner interner) {
+        this.interner = interner;
+        enterScope();
+    }
+
+    public void enterScope() {
+        if (++depth == scopeStart.length) {
+            scopeStart = Arrays.copyOf(scopeStart, depth * 2);
+            scopeSize = Arrays.copyOf(scopeSize, depth * 2);
+            scopeMax = Arrays.copyOf(scopeMax, depth * 2);
+        }
+        scopeStart[depth] = bindCount;
+        scopeSize[depth] = 0;
+        scopeMax[depth] = 0;
+    }
+
+    public void exitScope() {
+        if (depth == 0) return;
+        for (int b = bindCount - 1; b >= scopeStart[depth]; b--)
+            if (bindType[b] != null) innermost[bindSymbol[b]] = bindShadowed[b];
+        Arrays.fill(bindType, scopeStart[depth], bindCount, null);
+        size -= scopeSize[depth];
+        bindCount = scopeStart[depth--];
+    }
+
+    public void addSymbol(Token token) {
+        bind(local(token.value), token.type(), token.line());
+    }
+
+    public void removeSymbol(String lexeme) {
+        int symbol = find(lexeme);
+        if (symbol < 0) return;
+        int b = innermost[symbol];
+        if (b < scopeStart[depth]) return; // not bound in the current scope
+        innermost[symbol] = bindShadowed[b];
+        bindType[b] = null;
+        scopeSize[depth]--;
+        size--;
+    }
+
+    public int size() { return size; }
+
     public Token lookup(String lexeme) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            Token t = scopes.get(i).get(lexeme);
-            if (t != null) return t;
+        int symbol = find(lexeme);
+        if (symbol < 0 || innermost[symbol] < 0) return null;
+        int b = innermost[symbol];
+        return new Token(bindType[b], symbolName[symbol], line(b));
+    }
+
+    // Id of the name in buf[start, end), interning it if it is new: its global id (see
+    // SymbolInterner) if the interner is shared, else its local index.
+    public int intern(char[] buf, int start, int end) {
+        int symbol = local(buf, start, end); // may grow symbolId
+        return symbolId[symbol];
+    }
+
+    // Local index of the name in buf[start, end); a shared interner is only asked about new names.
+    int local(char[] buf, int start, int end) {
+        int hash = SymbolInterner.hash(buf, start, end);
+        int mask = slots.length - 1;
+        for (int slot = SymbolInterner.slot(hash, mask); ; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+            if (symbol >= 0) {
+                if (symbolHash[symbol] == hash && SymbolInterner.matches(symbolName[symbol], buf, start, end)) return symbol;
+            } else if (interner == null) {
+                return add(symbolCount, new String(buf, start, end - start), hash);
+            } else {
+                int id = interner.intern(buf, start, end, hash);
+                return add(id, interner.name(id), hash);
+            }
         }
-        return null;
     }
+
+    int local(String name) {
+        int symbol = find(name);
+        if (symbol >= 0) return symbol;
+        if (interner == null) return add(symbolCount, name, name.hashCode());
+        int id = interner.intern(name);
+        return add(id, interner.name(id), name.hashCode());
+    }
+
+    private int find(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = SymbolInterner.slot(hash, mask); ; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+            if (symbol < 0) return -1;
+            if (symbolHash[symbol] == hash && symbolName[symbol].equals(name)) return symbol;
+        }
+    }
+
+    String name(int symbol) { return symbolName[symbol]; }
+
+    // Binds a name (local index) in the current scope, replacing its binding there if it has one.
+    void bind(int symbol, String type, int line) {
+        int b = innermost[symbol];
+        if (b >= scopeStart[depth]) {
+            bindType[b] = type;
+            bindLine[b] = line;
+            return;
+        }
+        if (bindCount == bindSymbol.length) {
+            int grown = bindCount * 2;
+            bindSymbol = Arrays.copyOf(bindSymbol, grown);
+            bindShadowed = Arrays.copyOf(bindShadowed, grown);
+            bindLine = Arrays.copyOf(bindLine, grown);
+            bindType = Arrays.copyOf(bindType, grown);
+        }
+        b = bindCount++;
+        bindSymbol[b] = symbol;
+        bindShadowed[b] = innermost[symbol];
+        bindLine[b] = line;
+        bindType[b] = type;
+        innermost[symbol] = b;
+        if (++scopeSize[depth] > scopeMax[depth]) scopeMax[depth] = scopeSize[depth];
+        size++;
+    }
+
+    // As bind, with the line taken from liveLines.applyAsInt(key) whenever it is read.
+    void bindLive(int symbol, String type, int key) {
+        bind(symbol, type, ~key);
+    }
+
+    private int line(int b) {
+        int line = bindLine[b];
+        return line >= 0 ? line : liveLines.applyAsInt(~line);
+    }
+
+    private int add(int id, String name, int hash) {
+        if (symbolCount == symbolId.length) {
+            int grown = symbolCount * 2;
+            symbolId = Arrays.copyOf(symbolId, grown);
+            symbolName = Arrays.copyOf(symbolName, grown);
+            symbolHash = Arrays.copyOf(symbolHash, grown);
+            innermost = Arrays.copyOf(innermost, grown);
+        }
+        int symbol = symbolCount++;
+        symbolId[symbol] = id;
+        symbolName[symbol] = name;
+        symbolHash[symbol] = hash;
+        innermost[symbol] = -1;
+        if (symbolCount * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int s = 0; s < symbolCount; s++) place(s);
+        } else {
+            place(symbol);
+        }
+        return symbol;
+    }
+
+    private void place(int symbol) {
+        int mask = slots.length - 1;
+        int slot = SymbolInterner.slot(symbolHash[symbol], mask);
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = symbol + 1;
+    }
+
     public void display() {
-        System.out.println("Symbol Table (Scopes):");
-        for (int i = 0; i < scopes.size(); i++) {
-            System.out.println("Scope " + i + ":");
-            for (Token token : scopes.get(i).values())
-                System.out.println("  " + token);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, System.out.charset()));
+        display(out);
+        out.flush();
+    }
+
+    public void display(PrintWriter out) {
+        out.println("Symbol Table (Scopes):");
+        for (int i = 0; i <= depth; i++) {
+            out.print("Scope "); out.print(i); out.println(":");
+            // Replays the scope's bindings into a HashMap of the capacity it would have grown to.
+            int capacity = 16;
+            while (scopeMax[i] > capacity * 3 / 4) capacity *= 2;
+            Map<String, Token> scope = new HashMap<>(capacity);
+            int end = i < depth ? scopeStart[i + 1] : bindCount;
+            for (int b = scopeStart[i]; b < end; b++)
+                if (bindType[b] != null)
+                    scope.put(symbolName[bindSymbol[b]], new Token(bindType[b], symbolName[bindSymbol[b]], line(b)));
+            for (Token token : scope.values()) {
+                out.print("  "); out.println(token);
+            }
         }
     }
 }
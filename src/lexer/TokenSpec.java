@@ -0,0 +1,92 @@
+package lexer;
+
+import java.util.*;
+import automata.CompiledDFA;
+import automata.DFAMinimizer;
+import automata.LazyDFA;
+import automata.NFABuilder;
+import automata.NFABuilder.DFAState;
+
+// Ordered lexer specification: token name, regex and priority per token kind.
+// The kind of a token is its index in declaration order. When a DFA state accepts
+// several kinds, the highest priority wins and ties go to the earlier declaration.
+public class TokenSpec {
+    public static class Entry {
+        public final String name;
+        public final String regex;
+        public final int priority;
+        public Entry(String name, String regex, int priority) {
+            this.name = name;
+            this.regex = regex;
+            this.priority = priority;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public TokenSpec add(String name, String regex, int priority) {
+        if (kindOf(name) >= 0)
+            throw new IllegalArgumentException("Duplicate token type " + name);
+        entries.add(new Entry(name, regex, priority));
+        return this;
+    }
+
+    public int size() { return entries.size(); }
+    public Entry get(int kind) { return entries.get(kind); }
+    public List<Entry> entries() { return Collections.unmodifiableList(entries); }
+
+    public int kindOf(String name) {
+        for (int i = 0; i < entries.size(); i++)
+            if (entries.get(i).name.equals(name)) return i;
+        return -1;
+    }
+
+    public String[] names() {
+        String[] names = new String[entries.size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = entries.get(i).name;
+        return names;
+    }
+
+    // Thompson NFA for one token kind, with its accept state tagged with the kind and priority.
+    public NFABuilder.Fragment buildNFA(NFABuilder builder, int kind) {
+        return buildNFA(builder, kind, true);
+    }
+
+    // optimize = false skips automata.RegexOptimizer, for comparing against the regex as written.
+    public NFABuilder.Fragment buildNFA(NFABuilder builder, int kind, boolean optimize) {
+        Entry e = entries.get(kind);
+        NFABuilder.Fragment nfa = NFABuilder.RegexToNFA.convert(builder, e.regex, optimize);
+        builder.setAccept(nfa.accept, kind, e.priority);
+        return nfa;
+    }
+
+    // Full pipeline without diagnostics: NFAs, subset construction, minimization, table.
+    // Uses a fresh NFABuilder, so the result does not depend on earlier builds and several
+    // specs can be compiled on different threads at once.
+    public CompiledDFA compile() {
+        return compileWithout();
+    }
+
+    // As compile(), but the named kinds are left out of the automaton: they keep their kind
+    // numbers and names and no state accepts them. For kinds the lexer recognizes another way,
+    // e.g. KEYWORD, which LexicalAnalyzer then finds among identifiers with its keyword table.
+    public CompiledDFA compileWithout(String... kindNames) {
+        Set<String> left = new HashSet<>(Arrays.asList(kindNames));
+        NFABuilder builder = new NFABuilder();
+        List<NFABuilder.Fragment> nfaList = new ArrayList<>();
+        for (int kind = 0; kind < entries.size(); kind++)
+            if (!left.contains(entries.get(kind).name)) nfaList.add(buildNFA(builder, kind));
+        DFAState dfaStart = NFABuilder.convertNFAtoDFA(builder.combineNFAs(nfaList));
+        return CompiledDFA.compile(DFAMinimizer.minimize(dfaStart), names());
+    }
+
+    // Only the NFAs: states of the DFA are built while lexing, at most maxStates at a time.
+    public LazyDFA compileLazy(int maxStates) {
+        NFABuilder builder = new NFABuilder();
+        List<NFABuilder.Fragment> nfaList = new ArrayList<>();
+        for (int kind = 0; kind < entries.size(); kind++)
+            nfaList.add(buildNFA(builder, kind));
+        return LazyDFA.of(builder.combineNFAs(nfaList), names(), maxStates);
+    }
+}
@@ -0,0 +1,82 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import token.Token;
+
+// Pull-based token stream: tokens are scanned only when next() or peek(k) asks for them, so a
+// consumer can start before the input is fully lexed, stop early, and keep memory bounded by
+// its lookahead. Look-ahead tokens sit in a ring buffer that grows to the largest k requested.
+public class TokenStream implements Iterator<Token>, AutoCloseable {
+    private final LexicalAnalyzer lexer;
+    private final DFAScanner scanner;
+    private final Reader source;
+    private Token[] ring = new Token[4];
+    private int head;      // index of the next token in ring
+    private int buffered;  // tokens scanned but not yet returned
+    private boolean exhausted;
+
+    TokenStream(LexicalAnalyzer lexer, Reader source) {
+        this.lexer = lexer;
+        this.source = source;
+        this.scanner = lexer.newScanner(source);
+    }
+
+    TokenStream(LexicalAnalyzer lexer, String source) {
+        this(lexer, new StringReader(source));
+    }
+
+    // The k-th upcoming token (0 is the one next() returns), or null past the end of input.
+    public Token peek(int k) {
+        if (k < 0) throw new IllegalArgumentException("Negative lookahead " + k);
+        while (buffered <= k && !exhausted)
+            scanOne();
+        return k < buffered ? ring[(head + k) & (ring.length - 1)] : null;
+    }
+
+    public Token peek() { return peek(0); }
+
+    @Override
+    public boolean hasNext() { return peek(0) != null; }
+
+    @Override
+    public Token next() {
+        Token token = peek(0);
+        if (token == null) throw new NoSuchElementException();
+        ring[head] = null;
+        head = (head + 1) & (ring.length - 1);
+        buffered--;
+        return token;
+    }
+
+    private void scanOne() {
+        try {
+            if (lexer.nextToken(scanner) < 0) {
+                exhausted = true;
+                lexer.finish(scanner, 0);
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffered == ring.length) {
+            Token[] grown = new Token[ring.length * 2];
+            for (int i = 0; i < buffered; i++)
+                grown[i] = ring[(head + i) & (ring.length - 1)];
+            ring = grown;
+            head = 0;
+        }
+        ring[(head + buffered) & (ring.length - 1)] = lexer.toToken(scanner);
+        buffered++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lexer.finish(scanner, 0); // counts what was scanned if the stream is closed early
+        source.close();
+    }
+}
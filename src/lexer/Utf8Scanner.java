@@ -0,0 +1,153 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import automata.CompiledDFA;
+
+// Maximal-munch scanner over UTF-8 bytes, stepping the byte-level DFA from automata.Utf8DFA.
+// The counterpart of DFAScanner for input that is already in memory (a byte array or a mapped
+// file): there is no window to refill, positions are byte offsets into the buffer, and nothing
+// is decoded here. Tokens always end on char boundaries because only the char DFA's own states
+// accept. An unrecognized char is covered by its whole UTF-8 sequence (one byte if the bytes are
+// not well-formed UTF-8), so the caller can decode it for the error message.
+final class Utf8Scanner {
+    static final int EOF = DFAScanner.EOF;
+    static final int ERROR = DFAScanner.ERROR;
+
+    private final boolean[] discardKind;
+    private final ByteBuffer source;
+    private final char[] classMap;   // covers all 256 bytes
+    private final int[] table;
+    private final int[] acceptKind;
+    private final char[][] exitChars;
+    private final int classCount;
+    private final int startState;
+    private final int limit;
+
+    private int pos;
+    private int line = 1;
+    private char[] scratch = new char[64];
+
+    // Current token, valid after next() returned a kind >= 0 (or ERROR, covering the bad char).
+    int kind;
+    int start;
+    int end;
+    int tokenLine;
+    // Per-scan counters when LexerMetrics are attached, else null.
+    LexerMetrics.Scan scan;
+
+    // bytes is the result of Utf8DFA.compile; source is read from 0 to its limit.
+    Utf8Scanner(CompiledDFA bytes, boolean[] discardKind, ByteBuffer source) {
+        this.discardKind = discardKind;
+        this.source = source;
+        this.classMap = bytes.classMap;
+        this.table = bytes.table;
+        this.acceptKind = bytes.acceptKind;
+        this.exitChars = bytes.exitChars;
+        this.classCount = bytes.classCount;
+        this.startState = bytes.startState;
+        this.limit = source.limit();
+    }
+
+    int position() { return pos; }
+
+    // Scans to the next token that is not discarded and returns its raw accepted kind;
+    // ERROR for a char no token starts with (skipped as a whole), EOF at end of input.
+    int next() {
+        ByteBuffer source = this.source;
+        for (;;) {
+            int newlines = 0;
+            for (; pos < limit; pos++) {
+                byte b = source.get(pos);
+                if (b == '\n') newlines++;
+                else if (b != ' ' && b != '\t' && b != '\r') break;
+            }
+            line += newlines;
+            if (pos == limit) return EOF;
+            int startPos = pos;
+            int state = startState;
+            int lastAcceptPos = -1;
+            int lastAcceptKind = -1;
+            int i = pos;
+            while (i < limit) {
+                int next = table[state * classCount + classMap[source.get(i) & 0xFF]];
+                if (next < 0) break;
+                i++;
+                if (next == state) i = skipSelfLoop(state, i);
+                state = next;
+                if (acceptKind[state] >= 0) {
+                    lastAcceptPos = i;
+                    lastAcceptKind = acceptKind[state];
+                }
+            }
+            tokenLine = line;
+            if (scan != null) {
+                if (lastAcceptKind < 0) scan.error(Math.max(0, i - startPos - 1));
+                else scan.token(lastAcceptKind, lastAcceptPos - startPos, i - lastAcceptPos);
+            }
+            if (lastAcceptKind < 0) {
+                start = startPos;
+                end = pos = startPos + sequenceLength(startPos);
+                kind = ERROR;
+                return ERROR;
+            }
+            pos = lastAcceptPos;
+            if (discardKind[lastAcceptKind]) continue;
+            start = startPos;
+            end = lastAcceptPos;
+            kind = lastAcceptKind;
+            return kind;
+        }
+    }
+
+    // As DFAScanner.skipSelfLoop, over bytes.
+    private int skipSelfLoop(int state, int i) {
+        char[] exits = exitChars[state];
+        if (exits != null) {
+            for (; i < limit; i++) {
+                int b = source.get(i) & 0xFF;
+                for (char exit : exits)
+                    if (b == exit) return i;
+            }
+            return i;
+        }
+        int row = state * classCount;
+        for (; i < limit; i++)
+            if (table[row + classMap[source.get(i) & 0xFF]] != state) break;
+        return i;
+    }
+
+    // Length of the well-formed UTF-8 sequence at p, or 1 if it is not one.
+    private int sequenceLength(int p) {
+        int lead = source.get(p) & 0xFF;
+        int length = lead < 0x80 ? 1 : lead < 0xC2 ? 0 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF5 ? 4 : 0;
+        if (length <= 1 || p + length > limit) return 1;
+        int second = source.get(p + 1) & 0xFF;
+        int lo = lead == 0xE0 ? 0xA0 : lead == 0xF0 ? 0x90 : 0x80;
+        int hi = lead == 0xED ? 0x9F : lead == 0xF4 ? 0x8F : 0xBF;
+        if (second < lo || second > hi) return 1;
+        for (int k = 2; k < length; k++)
+            if ((source.get(p + k) & 0xC0) != 0x80) return 1;
+        return length;
+    }
+
+    // [start, end) as chars in a scratch array reused by the next call, or null if it is not all ASCII.
+    char[] ascii(int start, int end) {
+        if (end - start > scratch.length) scratch = new char[Math.max(end - start, scratch.length * 2)];
+        for (int i = start; i < end; i++) {
+            byte b = source.get(i);
+            if (b < 0) return null;
+            scratch[i - start] = (char) b;
+        }
+        return scratch;
+    }
+
+    // Decodes [start, end); bytes that are not well-formed UTF-8 become U+FFFD.
+    String text(int start, int end) {
+        if (source.hasArray())
+            return new String(source.array(), source.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[end - start];
+        source.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
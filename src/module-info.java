@@ -5,4 +5,9 @@
  * 
  */
 module MyCustomLanguageCompiler {
-}
\ No newline at end of file
+    requires jdk.jfr; // lexer.Scan events (see lexer.LexerMetrics)
+    // Only the benchmark drivers in bench/ use these; run them with
+    // --add-modules jdk.management,java.compiler (see README, Benchmarks).
+    requires static jdk.management; // per-thread allocation counters
+    requires static java.compiler;  // compiles generated lexers in benchmark.GeneratedLexerCheck
+}
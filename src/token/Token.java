@@ -11,6 +11,9 @@ public class Token {
         this.line = line;
     }
     
+    public String type() { return type; }
+    public int line() { return line; }
+    
     @Override
     public String toString() {
         return "Token{type='" + type + "', value='" + value + "', line=" + line + "}";
@@ -0,0 +1,115 @@
+package token;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Columnar token storage: parallel int columns for kind, start offset, length and line,
+// allocated in fixed-size chunks so growth never copies existing tokens.
+// Lexemes are exposed as CharSequence views over the source; Token objects are only
+// built when a caller asks for them. Over a UTF-8 byte source (LexicalAnalyzer.tokenizeUtf8)
+// offsets and lengths are in bytes and each lexeme is decoded when it is asked for.
+public class TokenBuffer {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final CharSequence source;  // null over a byte source
+    private final ByteBuffer bytes;      // null over a char source
+    private final String[] typeNames;
+    private int[][] kinds = new int[4][];
+    private int[][] starts = new int[4][];
+    private int[][] lengths = new int[4][];
+    private int[][] lines = new int[4][];
+    private int size;
+
+    public TokenBuffer(CharSequence source, String[] typeNames) {
+        this.source = source;
+        this.bytes = null;
+        this.typeNames = typeNames;
+    }
+
+    public TokenBuffer(ByteBuffer utf8, String[] typeNames) {
+        this.source = null;
+        this.bytes = utf8;
+        this.typeNames = typeNames;
+    }
+
+    public void add(int kind, int start, int length, int line) {
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == kinds.length) {
+            int grown = chunk * 2;
+            kinds = Arrays.copyOf(kinds, grown);
+            starts = Arrays.copyOf(starts, grown);
+            lengths = Arrays.copyOf(lengths, grown);
+            lines = Arrays.copyOf(lines, grown);
+        }
+        if (kinds[chunk] == null) {
+            kinds[chunk] = new int[CHUNK_SIZE];
+            starts[chunk] = new int[CHUNK_SIZE];
+            lengths[chunk] = new int[CHUNK_SIZE];
+            lines[chunk] = new int[CHUNK_SIZE];
+        }
+        int slot = size & CHUNK_MASK;
+        kinds[chunk][slot] = kind;
+        starts[chunk][slot] = start;
+        lengths[chunk][slot] = length;
+        lines[chunk][slot] = line;
+        size++;
+    }
+
+    public int size() { return size; }
+    public CharSequence source() { return source; }
+    public ByteBuffer bytes() { return bytes; }
+    public String[] typeNames() { return typeNames; }
+
+    public int kind(int i) { return kinds[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public int start(int i) { return starts[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public int length(int i) { return lengths[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public int line(int i) { return lines[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public String typeName(int i) { return typeNames[kind(i)]; }
+
+    public CharSequence lexeme(int i) {
+        int start = start(i);
+        if (bytes != null) return StandardCharsets.UTF_8.decode(bytes.slice(start, length(i)));
+        return CharBuffer.wrap(source, start, start + length(i));
+    }
+
+    public Token toToken(int i) {
+        int start = start(i);
+        String text = bytes != null ? lexeme(i).toString() : source.subSequence(start, start + length(i)).toString();
+        return new Token(typeName(i), text, line(i));
+    }
+
+    public List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            tokens.add(toToken(i));
+        return tokens;
+    }
+
+    public Cursor cursor() { return new Cursor(); }
+
+    // Forward-only cursor; call next() before reading the first token.
+    public class Cursor {
+        private int index = -1;
+
+        public boolean next() {
+            if (index + 1 >= size) return false;
+            index++;
+            return true;
+        }
+
+        public int index() { return index; }
+        public int kind() { return TokenBuffer.this.kind(index); }
+        public int start() { return TokenBuffer.this.start(index); }
+        public int length() { return TokenBuffer.this.length(index); }
+        public int line() { return TokenBuffer.this.line(index); }
+        public String typeName() { return TokenBuffer.this.typeName(index); }
+        public CharSequence lexeme() { return TokenBuffer.this.lexeme(index); }
+        public Token toToken() { return TokenBuffer.this.toToken(index); }
+    }
+}
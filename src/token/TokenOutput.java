@@ -0,0 +1,123 @@
+package token;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Machine-readable token streams for tools downstream of the lexer.
+//
+// JSONL: one object per token, {"type":..,"text":..,"line":..,"offset":..,"length":..}.
+//
+// Binary: "MLTK", a version byte, the type-name table (count, then length-prefixed UTF-8 names)
+// and the token count, followed per token by the kind, the gap since the end of the previous
+// token, the length and the line delta. Every number is an unsigned LEB128 varint, so a typical
+// token takes four bytes. Lexemes are not stored: readBinary rebuilds a TokenBuffer over the
+// same source text.
+public class TokenOutput {
+    private static final byte[] MAGIC = { 'M', 'L', 'T', 'K' };
+    private static final int VERSION = 1;
+
+    public static void writeJsonl(TokenBuffer tokens, Writer out) throws IOException {
+        TokenBuffer.Cursor c = tokens.cursor();
+        while (c.next()) {
+            out.write("{\"type\":\"");
+            escape(c.typeName(), out);
+            out.write("\",\"text\":\"");
+            escape(c.lexeme(), out);
+            out.write("\",\"line\":");
+            out.write(Integer.toString(c.line()));
+            out.write(",\"offset\":");
+            out.write(Integer.toString(c.start()));
+            out.write(",\"length\":");
+            out.write(Integer.toString(c.length()));
+            out.write("}\n");
+        }
+    }
+
+    private static void escape(CharSequence s, Writer out) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        out.write("\\u00");
+                        out.write(Character.forDigit(ch >> 4, 16));
+                        out.write(Character.forDigit(ch & 0xf, 16));
+                    } else {
+                        out.write(ch);
+                    }
+            }
+        }
+    }
+
+    public static void writeBinary(TokenBuffer tokens, OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        String[] names = tokens.typeNames();
+        writeVarint(names.length, out);
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length, out);
+            out.write(bytes);
+        }
+        writeVarint(tokens.size(), out);
+        int end = 0, line = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            int start = tokens.start(i);
+            writeVarint(tokens.kind(i), out);
+            writeVarint(start - end, out);
+            writeVarint(tokens.length(i), out);
+            writeVarint(tokens.line(i) - line, out);
+            end = start + tokens.length(i);
+            line = tokens.line(i);
+        }
+    }
+
+    // Reads a stream written by writeBinary; source must be the text that was lexed.
+    public static TokenBuffer readBinary(InputStream in, CharSequence source) throws IOException {
+        for (byte b : MAGIC)
+            if (in.read() != b) throw new IOException("Not a binary token stream");
+        int version = in.read();
+        if (version != VERSION) throw new IOException("Unsupported token stream version " + version);
+        String[] names = new String[readVarint(in)];
+        for (int k = 0; k < names.length; k++)
+            names[k] = new String(in.readNBytes(readVarint(in)), StandardCharsets.UTF_8);
+        TokenBuffer tokens = new TokenBuffer(source, names);
+        int count = readVarint(in);
+        int end = 0, line = 0;
+        for (int i = 0; i < count; i++) {
+            int kind = readVarint(in);
+            int start = end + readVarint(in);
+            int length = readVarint(in);
+            line += readVarint(in);
+            if (kind >= names.length || start + length > source.length())
+                throw new IOException("Token " + i + " does not fit the source");
+            tokens.add(kind, start, length, line);
+            end = start + length;
+        }
+        return tokens;
+    }
+
+    private static void writeVarint(int value, OutputStream out) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Truncated token stream");
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in token stream");
+    }
+}